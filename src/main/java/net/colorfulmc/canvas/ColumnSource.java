@@ -0,0 +1,68 @@
+package net.colorfulmc.canvas;
+
+/**
+ * A table of rows whose fields are stored column by column.
+ * Used by {@link ColumnarPredicate} to evaluate expressions over many rows at once.
+ */
+public interface ColumnSource {
+    /**
+     * Get the number of rows in this source.
+     *
+     * @return The row count
+     */
+    int rowCount();
+
+    /**
+     * Check whether a column exists and holds primitive numeric values.
+     *
+     * @param name The column name
+     * @return true if the column can be loaded with {@link #loadDoubles}
+     */
+    boolean hasNumericColumn(String name);
+
+    /**
+     * Copy a range of a numeric column into a buffer.
+     *
+     * @param name The column name
+     * @param fromRow The first row to copy
+     * @param dest The buffer to copy into, starting at index 0
+     * @param length The number of rows to copy
+     */
+    void loadDoubles(String name, int fromRow, double[] dest, int length);
+
+    /**
+     * Get the type a numeric column's values have when read through {@link #row}.
+     * Columns are evaluated column by column when this is {@code Double}, or an integral type
+     * ({@code Long}, {@code Integer}, {@code Short} or {@code Byte}) loaded with {@link #loadLongs}.
+     * Defaults to null, which evaluates expressions over the column one row at a time.
+     *
+     * @param name The column name
+     * @return The boxed value type, or null if the column is missing or cannot be loaded
+     */
+    default Class<?> getNumericType(String name) {
+        return null;
+    }
+
+    /**
+     * Copy a range of an integral numeric column into a buffer.
+     *
+     * @param name The column name
+     * @param fromRow The first row to copy
+     * @param dest The buffer to copy into, starting at index 0
+     * @param length The number of rows to copy
+     */
+    default void loadLongs(String name, int fromRow, long[] dest, int length) {
+        for (int i = 0; i < length; i++) {
+            dest[i] = ((Number) row(fromRow + i).get(name)).longValue();
+        }
+    }
+
+    /**
+     * Get a context view of a single row.
+     * Used for expressions that cannot be evaluated column by column.
+     *
+     * @param row The row index
+     * @return A context exposing the row's values by column name
+     */
+    Context row(int row);
+}
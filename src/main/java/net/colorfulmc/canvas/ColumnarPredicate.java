@@ -0,0 +1,549 @@
+package net.colorfulmc.canvas;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * An Expression compiled for evaluation over a whole {@link ColumnSource} at once.
+ * <p>
+ * Purely numeric expression trees (comparisons and math over numeric fields and literals)
+ * are compiled into kernels that work on chunks of primitive columns using simple counted
+ * loops, which the JIT can unroll and auto-vectorize. Integral values are kept in {@code long}
+ * lanes and Doubles in {@code double} lanes, so results match row-by-row evaluation exactly:
+ * {@code ==} is type-strict like {@link Object#equals}, and longs above 2^53 compare without
+ * rounding. Any other expression, or a source without a supported type for one of the
+ * referenced columns, falls back to evaluating the original expression one row at a time.
+ */
+public class ColumnarPredicate {
+    static final int CHUNK_SIZE = 1024;
+
+    private final Expression expression;
+    private final PredicateKernel kernel;
+    private final int slotCount;
+
+    private ColumnarPredicate(Expression expression, PredicateKernel kernel, int slotCount) {
+        this.expression = expression;
+        this.kernel = kernel;
+        this.slotCount = slotCount;
+    }
+
+    /**
+     * Compile an expression for columnar evaluation.
+     *
+     * @param expression The expression to compile
+     * @return The compiled predicate
+     */
+    public static ColumnarPredicate compile(Expression expression) {
+        SlotAllocator slots = new SlotAllocator();
+        PredicateKernel kernel = compilePredicate(expression, slots);
+        return new ColumnarPredicate(expression, kernel, slots.count);
+    }
+
+    /**
+     * Check whether the expression was compiled into a columnar kernel.
+     *
+     * @return true if the expression is purely numeric
+     */
+    public boolean isVectorized() {
+        return kernel != null;
+    }
+
+    /**
+     * Evaluate the predicate for every row of a source.
+     *
+     * @param source The rows to evaluate against
+     * @return A bitmap with a bit set for every matching row
+     */
+    public BitSet select(ColumnSource source) {
+        int rows = source.rowCount();
+        Lanes lanes = kernel == null ? null : new Lanes(slotCount);
+        if (lanes == null || !kernel.resolve(source, lanes.types)) {
+            return selectScalar(source, rows);
+        }
+
+        long[] words = new long[(rows + 63) >>> 6];
+        boolean[] mask = new boolean[CHUNK_SIZE];
+
+        for (int from = 0; from < rows; from += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, rows - from);
+            kernel.select(source, from, length, lanes, mask);
+
+            // Chunks start on a word boundary, so each word is written exactly once
+            for (int w = 0; w < length; w += 64) {
+                int end = Math.min(64, length - w);
+                long bits = 0;
+                for (int j = 0; j < end; j++) {
+                    if (mask[w + j]) {
+                        bits |= 1L << j;
+                    }
+                }
+                words[(from + w) >>> 6] = bits;
+            }
+        }
+
+        return BitSet.valueOf(words);
+    }
+
+    private BitSet selectScalar(ColumnSource source, int rows) {
+        BitSet result = new BitSet(rows);
+        if (source instanceof RowTable table) {
+            // Move one flyweight cursor instead of creating a context per row
+            RowCursor cursor = table.cursor();
+            while (cursor.next()) {
+                if (expression.evaluate(cursor)) {
+                    result.set(cursor.getRow());
+                }
+            }
+            return result;
+        }
+
+        for (int row = 0; row < rows; row++) {
+            if (expression.evaluate(source.row(row))) {
+                result.set(row);
+            }
+        }
+        return result;
+    }
+
+    private static PredicateKernel compilePredicate(Expression expression, SlotAllocator slots) {
+        if (expression instanceof ComparisonExpression comparison) {
+            NumericKernel left = compileNumeric(comparison.getLeft(), slots);
+            NumericKernel right = compileNumeric(comparison.getRight(), slots);
+            if (left == null || right == null) {
+                return null;
+            }
+
+            return switch (comparison.getOperator()) {
+                case "==", "is", "!=", ">", "<", ">=", "<=" ->
+                        new ComparisonKernel(comparison.getOperator(), left, right);
+                default -> null;
+            };
+        }
+
+        if (expression instanceof TruthExpression truth) {
+            NumericKernel value = compileNumeric(truth.getValue(), slots);
+            return value == null ? null : new TruthKernel(value);
+        }
+
+        return null;
+    }
+
+    private static NumericKernel compileNumeric(ValueExpression expression, SlotAllocator slots) {
+        if (expression instanceof LiteralExpression literal) {
+            if (literal.getValue() instanceof Number number) {
+                return new ConstantKernel(slots.next(), number);
+            }
+            return null;
+        }
+
+        if (expression instanceof FieldExpression field) {
+            return new ColumnKernel(slots.next(), field.getPath());
+        }
+
+        if (expression instanceof MathExpression math) {
+            NumericKernel left = compileNumeric(math.getLeft(), slots);
+            NumericKernel right = compileNumeric(math.getRight(), slots);
+            if (left == null || right == null) {
+                return null;
+            }
+
+            return switch (math.getOperator()) {
+                case "+", "-", "*", "/", "%", "^" -> new MathKernel(slots.next(), math.getOperator(), left, right);
+                default -> null;
+            };
+        }
+
+        return null;
+    }
+
+    private static class SlotAllocator {
+        private int count;
+
+        int next() {
+            return count++;
+        }
+    }
+
+    /**
+     * Check whether values of a type are loaded into long lanes.
+     */
+    private static boolean isIntegral(Class<?> type) {
+        return type == Long.class || type == Integer.class || type == Short.class || type == Byte.class;
+    }
+
+    /**
+     * Buffers for one select, and the type each slot's values would have when evaluated row by row.
+     */
+    private static final class Lanes {
+        final Class<?>[] types;
+        final double[][] doubles;
+        final long[][] longs;
+
+        Lanes(int slotCount) {
+            types = new Class<?>[slotCount];
+            doubles = new double[slotCount][CHUNK_SIZE];
+            longs = new long[slotCount][CHUNK_SIZE];
+        }
+    }
+
+    /**
+     * Kernel producing a boolean mask for a chunk of rows.
+     */
+    private abstract static class PredicateKernel {
+        /**
+         * Resolve the type of every slot for a source.
+         *
+         * @return false if the source cannot be evaluated column by column
+         */
+        abstract boolean resolve(ColumnSource source, Class<?>[] types);
+
+        abstract void select(ColumnSource source, int from, int length, Lanes lanes, boolean[] mask);
+    }
+
+    /**
+     * Kernel producing a chunk of numeric values into its own buffer slot.
+     * Integral values go into the slot's long lane, Doubles into its double lane.
+     */
+    private abstract static class NumericKernel {
+        final int slot;
+
+        NumericKernel(int slot) {
+            this.slot = slot;
+        }
+
+        /**
+         * Resolve and record the type of this kernel's values for a source.
+         *
+         * @return The boxed type, or null if the source cannot be evaluated column by column
+         */
+        abstract Class<?> resolve(ColumnSource source, Class<?>[] types);
+
+        abstract void evaluate(ColumnSource source, int from, int length, Lanes lanes);
+
+        /**
+         * Get this kernel's values as doubles, converting them if they were produced as longs.
+         */
+        final double[] doubles(Lanes lanes, int length) {
+            double[] out = lanes.doubles[slot];
+            if (isIntegral(lanes.types[slot])) {
+                long[] values = lanes.longs[slot];
+                for (int i = 0; i < length; i++) {
+                    out[i] = values[i];
+                }
+            }
+            return out;
+        }
+    }
+
+    private static class ConstantKernel extends NumericKernel {
+        private final Number value;
+
+        ConstantKernel(int slot, Number value) {
+            super(slot);
+            this.value = value;
+        }
+
+        @Override
+        Class<?> resolve(ColumnSource source, Class<?>[] types) {
+            Class<?> type = value.getClass();
+            return type == Double.class || isIntegral(type) ? types[slot] = type : null;
+        }
+
+        @Override
+        void evaluate(ColumnSource source, int from, int length, Lanes lanes) {
+            // Constants never change, so the buffer only needs to be filled once per select
+            if (from == 0) {
+                if (isIntegral(lanes.types[slot])) {
+                    Arrays.fill(lanes.longs[slot], value.longValue());
+                } else {
+                    Arrays.fill(lanes.doubles[slot], value.doubleValue());
+                }
+            }
+        }
+    }
+
+    private static class ColumnKernel extends NumericKernel {
+        private final String name;
+
+        ColumnKernel(int slot, String name) {
+            super(slot);
+            this.name = name;
+        }
+
+        @Override
+        Class<?> resolve(ColumnSource source, Class<?>[] types) {
+            Class<?> type = source.getNumericType(name);
+            return type == Double.class || isIntegral(type) ? types[slot] = type : null;
+        }
+
+        @Override
+        void evaluate(ColumnSource source, int from, int length, Lanes lanes) {
+            if (isIntegral(lanes.types[slot])) {
+                source.loadLongs(name, from, lanes.longs[slot], length);
+            } else {
+                source.loadDoubles(name, from, lanes.doubles[slot], length);
+            }
+        }
+    }
+
+    private static class MathKernel extends NumericKernel {
+        private final String operator;
+        private final NumericKernel left;
+        private final NumericKernel right;
+
+        MathKernel(int slot, String operator, NumericKernel left, NumericKernel right) {
+            super(slot);
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Class<?> resolve(ColumnSource source, Class<?>[] types) {
+            Class<?> a = left.resolve(source, types);
+            Class<?> b = right.resolve(source, types);
+            if (a == null || b == null) {
+                return null;
+            }
+
+            // Same result types as MathExpression: / and ^ always produce doubles, the others
+            // only when an operand is a Double
+            boolean floating = operator.equals("/") || operator.equals("^") || a == Double.class || b == Double.class;
+            return types[slot] = floating ? Double.class : Long.class;
+        }
+
+        @Override
+        void evaluate(ColumnSource source, int from, int length, Lanes lanes) {
+            left.evaluate(source, from, length, lanes);
+            right.evaluate(source, from, length, lanes);
+
+            if (lanes.types[slot] == Long.class) {
+                evaluateLongs(lanes.longs[left.slot], lanes.longs[right.slot], lanes.longs[slot], length);
+            } else {
+                evaluateDoubles(left.doubles(lanes, length), right.doubles(lanes, length), lanes.doubles[slot], length);
+            }
+        }
+
+        private void evaluateLongs(long[] a, long[] b, long[] out, int length) {
+            switch (operator) {
+                case "+" -> {
+                    for (int i = 0; i < length; i++) {
+                        out[i] = a[i] + b[i];
+                    }
+                }
+                case "-" -> {
+                    for (int i = 0; i < length; i++) {
+                        out[i] = a[i] - b[i];
+                    }
+                }
+                case "*" -> {
+                    for (int i = 0; i < length; i++) {
+                        out[i] = a[i] * b[i];
+                    }
+                }
+                case "%" -> {
+                    boolean zero = false;
+                    for (int i = 0; i < length; i++) {
+                        zero |= b[i] == 0;
+                    }
+                    if (zero) {
+                        throw new ArithmeticException("Modulo by zero");
+                    }
+                    for (int i = 0; i < length; i++) {
+                        out[i] = a[i] % b[i];
+                    }
+                }
+                default -> throw new IllegalArgumentException("Unsupported math operator: " + operator);
+            }
+        }
+
+        private void evaluateDoubles(double[] a, double[] b, double[] out, int length) {
+            switch (operator) {
+                case "+" -> {
+                    for (int i = 0; i < length; i++) {
+                        out[i] = a[i] + b[i];
+                    }
+                }
+                case "-" -> {
+                    for (int i = 0; i < length; i++) {
+                        out[i] = a[i] - b[i];
+                    }
+                }
+                case "*" -> {
+                    for (int i = 0; i < length; i++) {
+                        out[i] = a[i] * b[i];
+                    }
+                }
+                case "/" -> {
+                    checkNonZero(b, length, "Division by zero");
+                    for (int i = 0; i < length; i++) {
+                        out[i] = a[i] / b[i];
+                    }
+                }
+                case "%" -> {
+                    checkNonZero(b, length, "Modulo by zero");
+                    for (int i = 0; i < length; i++) {
+                        out[i] = a[i] % b[i];
+                    }
+                }
+                case "^" -> {
+                    for (int i = 0; i < length; i++) {
+                        out[i] = Math.pow(a[i], b[i]);
+                    }
+                }
+                default -> throw new IllegalArgumentException("Unsupported math operator: " + operator);
+            }
+        }
+
+        private static void checkNonZero(double[] values, int length, String message) {
+            boolean zero = false;
+            for (int i = 0; i < length; i++) {
+                zero |= values[i] == 0;
+            }
+            if (zero) {
+                throw new ArithmeticException(message);
+            }
+        }
+    }
+
+    private static class ComparisonKernel extends PredicateKernel {
+        private final String operator;
+        private final NumericKernel left;
+        private final NumericKernel right;
+
+        ComparisonKernel(String operator, NumericKernel left, NumericKernel right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean resolve(ColumnSource source, Class<?>[] types) {
+            Class<?> a = left.resolve(source, types);
+            Class<?> b = right.resolve(source, types);
+            return a != null && b != null;
+        }
+
+        @Override
+        void select(ColumnSource source, int from, int length, Lanes lanes, boolean[] mask) {
+            left.evaluate(source, from, length, lanes);
+            right.evaluate(source, from, length, lanes);
+
+            Class<?> leftType = lanes.types[left.slot];
+            Class<?> rightType = lanes.types[right.slot];
+            boolean equality = operator.equals("==") || operator.equals("is") || operator.equals("!=");
+            if (equality && leftType != rightType) {
+                // Equality is Object.equals, so values of different types never match
+                Arrays.fill(mask, 0, length, operator.equals("!="));
+            } else if (isIntegral(leftType) && isIntegral(rightType)) {
+                // Integral operands are compared exactly, as ComparisonExpression does
+                selectLongs(lanes.longs[left.slot], lanes.longs[right.slot], length, mask);
+            } else {
+                selectDoubles(left.doubles(lanes, length), right.doubles(lanes, length), length, mask);
+            }
+        }
+
+        private void selectLongs(long[] a, long[] b, int length, boolean[] mask) {
+            switch (operator) {
+                case "==", "is" -> {
+                    for (int i = 0; i < length; i++) {
+                        mask[i] = a[i] == b[i];
+                    }
+                }
+                case "!=" -> {
+                    for (int i = 0; i < length; i++) {
+                        mask[i] = a[i] != b[i];
+                    }
+                }
+                case ">" -> {
+                    for (int i = 0; i < length; i++) {
+                        mask[i] = a[i] > b[i];
+                    }
+                }
+                case "<" -> {
+                    for (int i = 0; i < length; i++) {
+                        mask[i] = a[i] < b[i];
+                    }
+                }
+                case ">=" -> {
+                    for (int i = 0; i < length; i++) {
+                        mask[i] = a[i] >= b[i];
+                    }
+                }
+                case "<=" -> {
+                    for (int i = 0; i < length; i++) {
+                        mask[i] = a[i] <= b[i];
+                    }
+                }
+                default -> throw new IllegalArgumentException("Unsupported operator: " + operator);
+            }
+        }
+
+        private void selectDoubles(double[] a, double[] b, int length, boolean[] mask) {
+            // Double.equals and Double.compare semantics: NaN equals itself and sorts last, -0.0 < 0.0
+            switch (operator) {
+                case "==", "is" -> {
+                    for (int i = 0; i < length; i++) {
+                        mask[i] = Double.doubleToLongBits(a[i]) == Double.doubleToLongBits(b[i]);
+                    }
+                }
+                case "!=" -> {
+                    for (int i = 0; i < length; i++) {
+                        mask[i] = Double.doubleToLongBits(a[i]) != Double.doubleToLongBits(b[i]);
+                    }
+                }
+                case ">" -> {
+                    for (int i = 0; i < length; i++) {
+                        mask[i] = Double.compare(a[i], b[i]) > 0;
+                    }
+                }
+                case "<" -> {
+                    for (int i = 0; i < length; i++) {
+                        mask[i] = Double.compare(a[i], b[i]) < 0;
+                    }
+                }
+                case ">=" -> {
+                    for (int i = 0; i < length; i++) {
+                        mask[i] = Double.compare(a[i], b[i]) >= 0;
+                    }
+                }
+                case "<=" -> {
+                    for (int i = 0; i < length; i++) {
+                        mask[i] = Double.compare(a[i], b[i]) <= 0;
+                    }
+                }
+                default -> throw new IllegalArgumentException("Unsupported operator: " + operator);
+            }
+        }
+    }
+
+    private static class TruthKernel extends PredicateKernel {
+        private final NumericKernel value;
+
+        TruthKernel(NumericKernel value) {
+            this.value = value;
+        }
+
+        @Override
+        boolean resolve(ColumnSource source, Class<?>[] types) {
+            return value.resolve(source, types) != null;
+        }
+
+        @Override
+        void select(ColumnSource source, int from, int length, Lanes lanes, boolean[] mask) {
+            value.evaluate(source, from, length, lanes);
+
+            if (isIntegral(lanes.types[value.slot])) {
+                long[] a = lanes.longs[value.slot];
+                for (int i = 0; i < length; i++) {
+                    mask[i] = a[i] != 0;
+                }
+            } else {
+                double[] a = lanes.doubles[value.slot];
+                for (int i = 0; i < length; i++) {
+                    mask[i] = a[i] != 0;
+                }
+            }
+        }
+    }
+}
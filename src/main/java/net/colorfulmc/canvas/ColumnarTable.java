@@ -0,0 +1,158 @@
+package net.colorfulmc.canvas;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable in-memory ColumnSource backed by primitive and object arrays.
+ * The arrays are not copied, so they should not be modified while the table is in use.
+ */
+public class ColumnarTable implements ColumnSource {
+    private final Map<String, Object> columns;
+    private final int rowCount;
+
+    /**
+     * Create an empty ColumnarTable.
+     */
+    public ColumnarTable() {
+        this(Collections.emptyMap(), -1);
+    }
+
+    private ColumnarTable(Map<String, Object> columns, int rowCount) {
+        this.columns = Collections.unmodifiableMap(columns);
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * Create a new table with an additional double column.
+     *
+     * @param name The column name
+     * @param values The column values, one per row
+     * @return A new table with the additional column
+     */
+    public ColumnarTable with(String name, double[] values) {
+        return withColumn(name, values, values.length);
+    }
+
+    /**
+     * Create a new table with an additional long column.
+     *
+     * @param name The column name
+     * @param values The column values, one per row
+     * @return A new table with the additional column
+     */
+    public ColumnarTable with(String name, long[] values) {
+        return withColumn(name, values, values.length);
+    }
+
+    /**
+     * Create a new table with an additional object column.
+     * Object columns are only visible to the scalar fallback path.
+     *
+     * @param name The column name
+     * @param values The column values, one per row
+     * @return A new table with the additional column
+     */
+    public ColumnarTable with(String name, Object[] values) {
+        return withColumn(name, values, values.length);
+    }
+
+    private ColumnarTable withColumn(String name, Object values, int length) {
+        if (rowCount >= 0 && length != rowCount) {
+            throw new IllegalArgumentException(
+                    "Column " + name + " has " + length + " rows, expected " + rowCount);
+        }
+
+        Map<String, Object> newColumns = new HashMap<>(columns);
+        newColumns.put(name, values);
+        return new ColumnarTable(newColumns, length);
+    }
+
+    @Override
+    public int rowCount() {
+        return Math.max(rowCount, 0);
+    }
+
+    @Override
+    public boolean hasNumericColumn(String name) {
+        Object column = columns.get(name);
+        return column instanceof double[] || column instanceof long[];
+    }
+
+    @Override
+    public void loadDoubles(String name, int fromRow, double[] dest, int length) {
+        Object column = columns.get(name);
+        if (column instanceof double[] doubles) {
+            System.arraycopy(doubles, fromRow, dest, 0, length);
+        } else if (column instanceof long[] longs) {
+            for (int i = 0; i < length; i++) {
+                dest[i] = longs[fromRow + i];
+            }
+        } else {
+            throw new IllegalArgumentException("Not a numeric column: " + name);
+        }
+    }
+
+    @Override
+    public Class<?> getNumericType(String name) {
+        Object column = columns.get(name);
+        if (column instanceof double[]) {
+            return Double.class;
+        }
+        return column instanceof long[] ? Long.class : null;
+    }
+
+    @Override
+    public void loadLongs(String name, int fromRow, long[] dest, int length) {
+        if (!(columns.get(name) instanceof long[] longs)) {
+            throw new IllegalArgumentException("Not a long column: " + name);
+        }
+        System.arraycopy(longs, fromRow, dest, 0, length);
+    }
+
+    @Override
+    public Context row(int row) {
+        if (row < 0 || row >= rowCount()) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of bounds for " + rowCount() + " rows");
+        }
+        return new RowContext(row);
+    }
+
+    private Object valueAt(Object column, int row) {
+        if (column instanceof double[] doubles) {
+            return doubles[row];
+        } else if (column instanceof long[] longs) {
+            return longs[row];
+        } else if (column instanceof Object[] objects) {
+            return objects[row];
+        }
+        return null;
+    }
+
+    /**
+     * Context view of a single row, reading values from the columns on demand.
+     */
+    private class RowContext implements Context {
+        private final int row;
+
+        private RowContext(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public Object get(String key) {
+            return valueAt(columns.get(key), row);
+        }
+
+        @Override
+        public Context with(String key, Object value) {
+            Map<String, Object> data = new HashMap<>();
+            for (Map.Entry<String, Object> entry : columns.entrySet()) {
+                data.put(entry.getKey(), valueAt(entry.getValue(), row));
+            }
+            data.put(key, value);
+            return new MapContext(data);
+        }
+    }
+}
@@ -14,11 +14,38 @@ public class ComparisonExpression implements Expression {
         this.right = right;
     }
 
+    /**
+     * Create a comparison specialized for its operator.
+     * The returned node adapts itself to the operand types it observes, so repeated evaluations
+     * with the same types take a short, type-specific path.
+     *
+     * @param left The left operand
+     * @param operator The comparison operator
+     * @param right The right operand
+     * @return The specialized expression, or a generic one for unknown operators
+     */
+    public static ComparisonExpression of(ValueExpression left, String operator, ValueExpression right) {
+        return switch (operator) {
+            case "==", "is" -> new ComparisonNodes.Equal(left, operator, right);
+            case "!=" -> new ComparisonNodes.NotEqual(left, right);
+            case ">" -> new ComparisonNodes.GreaterThan(left, right);
+            case "<" -> new ComparisonNodes.LessThan(left, right);
+            case ">=" -> new ComparisonNodes.GreaterOrEqual(left, right);
+            case "<=" -> new ComparisonNodes.LessOrEqual(left, right);
+            default -> new ComparisonExpression(left, operator, right);
+        };
+    }
+
     @Override
     public boolean evaluate(Context context) {
-        Object leftVal = left.evaluate(context);
-        Object rightVal = right.evaluate(context);
+        GuardedContext.step(context);
+        return test(left.evaluate(context), right.evaluate(context));
+    }
 
+    /**
+     * Apply the operator to already evaluated operands.
+     */
+    boolean test(Object leftVal, Object rightVal) {
         return switch (operator) {
             case "==", "is" -> equals(leftVal, rightVal);
             case "!=" -> !equals(leftVal, rightVal);
@@ -30,18 +57,23 @@ public class ComparisonExpression implements Expression {
         };
     }
 
-    private boolean equals(Object a, Object b) {
+    static boolean equals(Object a, Object b) {
         if (a == b) return true;
         if (a == null || b == null) return false;
         return a.equals(b);
     }
 
     @SuppressWarnings({"unchecked", "rawtypes"})
-    private int compare(Object a, Object b) {
+    static int compare(Object a, Object b) {
         if (a == null || b == null) {
             throw new IllegalArgumentException("Cannot compare null values");
         }
 
+        // Integral operands are compared exactly, doubles would lose precision above 2^53
+        if (MathNodes.isIntegral(a) && MathNodes.isIntegral(b)) {
+            return Long.compare(((Number) a).longValue(), ((Number) b).longValue());
+        }
+
         if (a instanceof Number && b instanceof Number) {
             return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
         }
@@ -57,4 +89,16 @@ public class ComparisonExpression implements Expression {
         throw new IllegalArgumentException(
                 "Cannot compare values of types " + a.getClass() + " and " + b.getClass());
     }
+
+    ValueExpression getLeft() {
+        return left;
+    }
+
+    String getOperator() {
+        return operator;
+    }
+
+    ValueExpression getRight() {
+        return right;
+    }
 }
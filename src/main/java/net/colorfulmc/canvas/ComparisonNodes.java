@@ -0,0 +1,184 @@
+package net.colorfulmc.canvas;
+
+/**
+ * Self-specializing comparison nodes, one class per operator.
+ * <p>
+ * Like {@link MathNodes}, each node picks a specialization from the operand types of its first
+ * evaluation and rewrites itself to the generic path in {@link ComparisonExpression} the first
+ * time a later evaluation doesn't fit it. As there, the state is a plain field and racing
+ * threads can only cost a node extra re-specializations, never a different result.
+ */
+final class ComparisonNodes {
+    static final byte UNINITIALIZED = 0;
+    static final byte STRING = 1;
+    static final byte INTEGER = 2;
+    static final byte LONG = 3;
+    static final byte DOUBLE = 4;
+    static final byte GENERIC = 5;
+
+    private ComparisonNodes() {
+    }
+
+    static final class Equal extends ComparisonExpression {
+        private byte state;
+
+        Equal(ValueExpression left, String operator, ValueExpression right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        boolean test(Object a, Object b) {
+            if (state == STRING && a instanceof String x && b instanceof String y) {
+                return x.equals(y);
+            }
+            if (state == INTEGER && a instanceof Integer x && b instanceof Integer y) {
+                return x.intValue() == y.intValue();
+            }
+            if (state == LONG && a instanceof Long x && b instanceof Long y) {
+                return x.longValue() == y.longValue();
+            }
+            return respecialize(a, b);
+        }
+
+        private boolean respecialize(Object a, Object b) {
+            if (state == UNINITIALIZED) {
+                state = specializeEquality(a, b);
+            } else {
+                state = GENERIC;
+            }
+            return state == GENERIC ? equals(a, b) : test(a, b);
+        }
+    }
+
+    static final class NotEqual extends ComparisonExpression {
+        private byte state;
+
+        NotEqual(ValueExpression left, ValueExpression right) {
+            super(left, "!=", right);
+        }
+
+        @Override
+        boolean test(Object a, Object b) {
+            if (state == STRING && a instanceof String x && b instanceof String y) {
+                return !x.equals(y);
+            }
+            if (state == INTEGER && a instanceof Integer x && b instanceof Integer y) {
+                return x.intValue() != y.intValue();
+            }
+            if (state == LONG && a instanceof Long x && b instanceof Long y) {
+                return x.longValue() != y.longValue();
+            }
+            return respecialize(a, b);
+        }
+
+        private boolean respecialize(Object a, Object b) {
+            if (state == UNINITIALIZED) {
+                state = specializeEquality(a, b);
+            } else {
+                state = GENERIC;
+            }
+            return state == GENERIC ? !equals(a, b) : test(a, b);
+        }
+    }
+
+    private static byte specializeEquality(Object a, Object b) {
+        if (a instanceof String && b instanceof String) {
+            return STRING;
+        }
+        if (a instanceof Integer && b instanceof Integer) {
+            return INTEGER;
+        }
+        if (a instanceof Long && b instanceof Long) {
+            return LONG;
+        }
+        return GENERIC;
+    }
+
+    /**
+     * Shared specialization state for the ordering operators.
+     */
+    abstract static class Ordering extends ComparisonExpression {
+        private byte state;
+
+        Ordering(ValueExpression left, String operator, ValueExpression right) {
+            super(left, operator, right);
+        }
+
+        /**
+         * Compare two operands, taking the specialized path when the operand types allow it.
+         */
+        final int compareSpecialized(Object a, Object b) {
+            if (state == LONG && MathNodes.isIntegral(a) && MathNodes.isIntegral(b)) {
+                return Long.compare(((Number) a).longValue(), ((Number) b).longValue());
+            }
+            if (state == DOUBLE && a instanceof Double x && b instanceof Double y) {
+                return Double.compare(x, y);
+            }
+            if (state == STRING && a instanceof String x && b instanceof String y) {
+                return x.compareTo(y);
+            }
+            return respecialize(a, b);
+        }
+
+        private int respecialize(Object a, Object b) {
+            if (state == UNINITIALIZED) {
+                if (MathNodes.isIntegral(a) && MathNodes.isIntegral(b)) {
+                    state = LONG;
+                } else if (a instanceof Double && b instanceof Double) {
+                    state = DOUBLE;
+                } else if (a instanceof String && b instanceof String) {
+                    state = STRING;
+                } else {
+                    state = GENERIC;
+                }
+            } else {
+                state = GENERIC;
+            }
+            return state == GENERIC ? compare(a, b) : compareSpecialized(a, b);
+        }
+    }
+
+    static final class GreaterThan extends Ordering {
+        GreaterThan(ValueExpression left, ValueExpression right) {
+            super(left, ">", right);
+        }
+
+        @Override
+        boolean test(Object a, Object b) {
+            return compareSpecialized(a, b) > 0;
+        }
+    }
+
+    static final class LessThan extends Ordering {
+        LessThan(ValueExpression left, ValueExpression right) {
+            super(left, "<", right);
+        }
+
+        @Override
+        boolean test(Object a, Object b) {
+            return compareSpecialized(a, b) < 0;
+        }
+    }
+
+    static final class GreaterOrEqual extends Ordering {
+        GreaterOrEqual(ValueExpression left, ValueExpression right) {
+            super(left, ">=", right);
+        }
+
+        @Override
+        boolean test(Object a, Object b) {
+            return compareSpecialized(a, b) >= 0;
+        }
+    }
+
+    static final class LessOrEqual extends Ordering {
+        LessOrEqual(ValueExpression left, ValueExpression right) {
+            super(left, "<=", right);
+        }
+
+        @Override
+        boolean test(Object a, Object b) {
+            return compareSpecialized(a, b) <= 0;
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package net.colorfulmc.canvas;
+
+import java.lang.reflect.Array;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.regex.Matcher;
+
+/**
+ * A template string that has been scanned once into literal text and placeholder segments.
+ * <p>
+ * Placeholders have the form {@code ${path}} or {@code ${path:format}}, where the optional
+ * format is a {@link PlaceholderFormat} specifier. Instances are immutable and can be
+ * rendered concurrently.
+ * <p>
+ * Sections are written as {@code ${#if condition}...${#else}...${/if}}, where the condition
+ * uses the {@link ExpressionParser} syntax without braces, and
+ * {@code ${#each path as name}...${/each}}, which renders its body once per element of a
+ * list, array or map values with the element bound to {@code name}. Only the branch that is
+ * taken is rendered, and elements are rendered straight from the source collection.
+ */
+public final class CompiledTemplate {
+    private final String source;
+    private final Segment[] segments;
+
+    CompiledTemplate(String source, Segment[] segments) {
+        this.source = source;
+        this.segments = segments;
+    }
+
+    /**
+     * Compile a template string.
+     *
+     * @param template The template string containing placeholders and sections
+     * @return The compiled template
+     * @throws IllegalArgumentException if a placeholder has an invalid path or format specifier,
+     *                                  or a section is malformed or not closed
+     */
+    public static CompiledTemplate compile(String template) {
+        Deque<Section> sections = new ArrayDeque<>();
+        Section root = new Section(null, null);
+        Section current = root;
+        Matcher matcher = Template.PLACEHOLDER_PATTERN.matcher(template);
+        int last = 0;
+
+        while (matcher.find()) {
+            if (matcher.start() > last) {
+                current.segments.add(new Text(template.substring(last, matcher.start())));
+            }
+            last = matcher.end();
+
+            String tag = matcher.group(1).trim();
+            if (tag.startsWith("#if ")) {
+                sections.push(current);
+                current = new Section("if", tag.substring(4).trim());
+            } else if (tag.equals("#else")) {
+                if (!"if".equals(current.kind) || current.otherwise != null) {
+                    throw new IllegalArgumentException("Unexpected ${#else} in template: " + template);
+                }
+                current.otherwise = new ArrayList<>();
+                current.segments = current.otherwise;
+            } else if (tag.startsWith("#each ")) {
+                sections.push(current);
+                current = new Section("each", tag.substring(6).trim());
+            } else if (tag.equals("/if") || tag.equals("/each")) {
+                if (!tag.substring(1).equals(current.kind)) {
+                    throw new IllegalArgumentException("Unexpected ${" + tag + "} in template: " + template);
+                }
+                Segment section = current.build();
+                current = sections.pop();
+                current.segments.add(section);
+            } else if (tag.startsWith("#")) {
+                // A section tag without its header, e.g. ${#if}, would otherwise become a placeholder
+                throw new IllegalArgumentException("Unexpected ${" + tag + "} in template: " + template);
+            } else {
+                current.segments.add(Placeholder.parse(matcher.group(1)));
+            }
+        }
+
+        if (current != root) {
+            throw new IllegalArgumentException("Unclosed ${#" + current.kind + " " + current.header
+                    + "} in template: " + template);
+        }
+
+        if (last < template.length()) {
+            root.segments.add(new Text(template.substring(last)));
+        }
+
+        return new CompiledTemplate(template, toArray(root.segments));
+    }
+
+    private static Segment[] toArray(List<Segment> segments) {
+        return segments.toArray(new Segment[0]);
+    }
+
+    /**
+     * A section being parsed.
+     */
+    private static final class Section {
+        final String kind;
+        final String header;
+        // The then branch of an if, or the body of an each
+        final List<Segment> body = new ArrayList<>();
+        // The else branch of an if, once ${#else} has been seen
+        List<Segment> otherwise;
+        // The list parsed segments are added to
+        List<Segment> segments = body;
+
+        Section(String kind, String header) {
+            this.kind = kind;
+            this.header = header;
+        }
+
+        Segment build() {
+            if (kind.equals("if")) {
+                Segment[] elseBranch = otherwise == null ? new Segment[0] : toArray(otherwise);
+                return Conditional.parse(header, toArray(body), elseBranch);
+            }
+            return Loop.parse(header, toArray(body));
+        }
+    }
+
+    /**
+     * Get the template string this template was compiled from.
+     *
+     * @return The template source
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Render the template into a string.
+     *
+     * @param context The context containing values to use
+     * @return The rendered string
+     */
+    public String render(Context context) {
+        StringBuilder out = new StringBuilder(source.length() + 16);
+        render(context, out);
+        return out.toString();
+    }
+
+    /**
+     * Render the template, appending to an existing buffer.
+     *
+     * @param context The context containing values to use
+     * @param out The buffer to append to
+     * @throws IllegalArgumentException if a placeholder has no value
+     */
+    public void render(Context context, StringBuilder out) {
+        renderAll(segments, context, out);
+    }
+
+    static void renderAll(Segment[] segments, Context context, StringBuilder out) {
+        for (Segment segment : segments) {
+            segment.render(context, out);
+        }
+    }
+
+    Segment[] getSegments() {
+        return segments;
+    }
+
+    /**
+     * A compiled piece of a template.
+     */
+    interface Segment {
+        void render(Context context, StringBuilder out);
+    }
+
+    /**
+     * Literal text copied to the output as-is.
+     */
+    static final class Text implements Segment {
+        final String text;
+
+        Text(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public void render(Context context, StringBuilder out) {
+            out.append(text);
+        }
+    }
+
+    /**
+     * A value looked up from the context, optionally formatted.
+     */
+    static final class Placeholder implements Segment {
+        final String path;
+        final PlaceholderFormat format;
+        final FieldExpression field;
+
+        Placeholder(String path, PlaceholderFormat format) {
+            this.path = path;
+            this.format = format;
+            this.field = new FieldExpression(path);
+        }
+
+        static Placeholder parse(String placeholder) {
+            int colon = findFormatSeparator(placeholder);
+            if (colon < 0) {
+                return new Placeholder(placeholder.trim(), null);
+            }
+            return new Placeholder(placeholder.substring(0, colon).trim(),
+                    PlaceholderFormat.of(placeholder.substring(colon + 1)));
+        }
+
+        /**
+         * Find the colon separating the path from the format, skipping over quoted map keys.
+         */
+        private static int findFormatSeparator(String placeholder) {
+            char quote = 0;
+            for (int i = 0; i < placeholder.length(); i++) {
+                char c = placeholder.charAt(i);
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == ':') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public void render(Context context, StringBuilder out) {
+            write(field.evaluate(context), out);
+        }
+
+        /**
+         * Write an already resolved value to the output.
+         */
+        void write(Object value, StringBuilder out) {
+            if (value == null) {
+                throw new IllegalArgumentException("No value found for placeholder: " + path);
+            }
+
+            if (format != null) {
+                format.format(value, out);
+            } else {
+                out.append(value);
+            }
+        }
+    }
+
+    /**
+     * A section rendered only when its condition holds, with an optional else branch.
+     */
+    static final class Conditional implements Segment {
+        final String source;
+        final Expression condition;
+        final Segment[] then;
+        final Segment[] otherwise;
+
+        Conditional(String source, Expression condition, Segment[] then, Segment[] otherwise) {
+            this.source = source;
+            this.condition = condition;
+            this.then = then;
+            this.otherwise = otherwise;
+        }
+
+        static Conditional parse(String source, Segment[] then, Segment[] otherwise) {
+            return new Conditional(source, ExpressionParser.parse("{" + source + "}"), then, otherwise);
+        }
+
+        @Override
+        public void render(Context context, StringBuilder out) {
+            renderAll(condition.evaluate(context) ? then : otherwise, context, out);
+        }
+    }
+
+    /**
+     * A section rendered once per element of a collection.
+     */
+    static final class Loop implements Segment {
+        final String path;
+        final String variable;
+        final FieldExpression field;
+        final Segment[] body;
+
+        Loop(String path, String variable, Segment[] body) {
+            this.path = path;
+            this.variable = variable;
+            this.field = new FieldExpression(path);
+            this.body = body;
+        }
+
+        static Loop parse(String header, Segment[] body) {
+            int as = header.lastIndexOf(" as ");
+            if (as < 0) {
+                throw new IllegalArgumentException("Expected ${#each path as name}: " + header);
+            }
+            String variable = header.substring(as + 4).trim();
+            if (variable.isEmpty() || !variable.chars().allMatch(Character::isJavaIdentifierPart)) {
+                throw new IllegalArgumentException("Invalid loop variable: " + variable);
+            }
+            return new Loop(header.substring(0, as).trim(), variable, body);
+        }
+
+        @Override
+        public void render(Context context, StringBuilder out) {
+            Object source = field.evaluate(context);
+            if (source == null) {
+                return;
+            }
+
+            ScopedContext scope = new ScopedContext(context, variable);
+            if (source instanceof List<?> list && list instanceof RandomAccess) {
+                for (int i = 0; i < list.size(); i++) {
+                    renderElement(list.get(i), scope, out);
+                }
+            } else if (source instanceof Iterable<?> iterable) {
+                for (Object element : iterable) {
+                    renderElement(element, scope, out);
+                }
+            } else if (source instanceof Map<?, ?> map) {
+                for (Object element : map.values()) {
+                    renderElement(element, scope, out);
+                }
+            } else if (source instanceof Object[] array) {
+                for (Object element : array) {
+                    renderElement(element, scope, out);
+                }
+            } else if (source.getClass().isArray()) {
+                int length = Array.getLength(source);
+                for (int i = 0; i < length; i++) {
+                    renderElement(Array.get(source, i), scope, out);
+                }
+            } else {
+                throw notIterable(source);
+            }
+        }
+
+        /**
+         * Get the elements of an already evaluated source as an iterable, boxing array elements.
+         */
+        Iterable<?> elements(Object source) {
+            if (source == null) {
+                return List.of();
+            } else if (source instanceof Iterable<?> iterable) {
+                return iterable;
+            } else if (source instanceof Map<?, ?> map) {
+                return map.values();
+            } else if (source instanceof Object[] array) {
+                return Arrays.asList(array);
+            } else if (source.getClass().isArray()) {
+                List<Object> elements = new ArrayList<>();
+                for (int i = 0; i < Array.getLength(source); i++) {
+                    elements.add(Array.get(source, i));
+                }
+                return elements;
+            }
+            throw notIterable(source);
+        }
+
+        private IllegalArgumentException notIterable(Object source) {
+            return new IllegalArgumentException("Cannot iterate over " + path + ": " + source.getClass().getName());
+        }
+
+        void renderElement(Object element, ScopedContext scope, StringBuilder out) {
+            GuardedContext.step(scope);
+            scope.bind(element);
+            renderAll(body, scope, out);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package net.colorfulmc.canvas;
+
+/**
+ * Thrown when a guarded evaluation runs out of its step or time budget.
+ */
+public class EvaluationBudgetExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final long steps;
+    private final long elapsedNanos;
+
+    public EvaluationBudgetExceededException(String message, long steps, long elapsedNanos) {
+        super(message);
+        this.steps = steps;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Get the number of steps taken before the evaluation was aborted.
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * Get the time spent before the evaluation was aborted, in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+}
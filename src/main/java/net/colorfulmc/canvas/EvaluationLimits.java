@@ -0,0 +1,52 @@
+package net.colorfulmc.canvas;
+
+import java.time.Duration;
+
+/**
+ * Limits applied to guarded evaluation of untrusted expressions.
+ *
+ * @see GuardedExpression
+ * @see GuardedContext
+ */
+public final class EvaluationLimits {
+    private final long maxCost;
+    private final long maxSteps;
+    private final long maxNanos;
+
+    /**
+     * Create new evaluation limits.
+     *
+     * @param maxCost The highest static cost an expression may have, see {@link ExpressionCost}
+     * @param maxSteps The most evaluation steps a single evaluation may take
+     * @param maxTime The longest a single evaluation may run
+     */
+    public EvaluationLimits(long maxCost, long maxSteps, Duration maxTime) {
+        if (maxCost <= 0 || maxSteps <= 0 || maxTime.isNegative() || maxTime.isZero()) {
+            throw new IllegalArgumentException("Evaluation limits must be positive");
+        }
+        this.maxCost = maxCost;
+        this.maxSteps = maxSteps;
+        this.maxNanos = maxTime.toNanos();
+    }
+
+    /**
+     * Get the highest static cost an expression may have.
+     */
+    public long getMaxCost() {
+        return maxCost;
+    }
+
+    /**
+     * Get the most evaluation steps a single evaluation may take.
+     */
+    public long getMaxSteps() {
+        return maxSteps;
+    }
+
+    /**
+     * Get the longest a single evaluation may run, in nanoseconds.
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+}
@@ -0,0 +1,268 @@
+package net.colorfulmc.canvas;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Evaluates expressions and templates node by node, recording per-node results, timings,
+ * allocations and member lookup counts.
+ * <p>
+ * Explaining is meant for diagnosing slow rules, not for production evaluation: it walks the
+ * tree itself so every node can be measured on its own, which adds overhead to every node.
+ * A node that throws is recorded with its error, and so is every node above it.
+ */
+public final class Explain {
+    private static final com.sun.management.ThreadMXBean THREADS = allocationTracker();
+
+    private Explain() {
+    }
+
+    private static com.sun.management.ThreadMXBean allocationTracker() {
+        try {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                    && threads.isThreadAllocatedMemorySupported()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+                return threads;
+            }
+        } catch (RuntimeException | LinkageError ignored) {
+            // Not available on this JVM
+        }
+        return null;
+    }
+
+    /**
+     * Explain the evaluation of an expression.
+     *
+     * @param expression The expression to evaluate
+     * @param context The context to evaluate against
+     * @return The root of the explained tree
+     */
+    public static ExplainNode explain(Expression expression, Context context) {
+        return explainExpression(expression, context);
+    }
+
+    /**
+     * Explain the evaluation of a value expression.
+     *
+     * @param expression The value expression to evaluate
+     * @param context The context to evaluate against
+     * @return The root of the explained tree
+     */
+    public static ExplainNode explainValue(ValueExpression expression, Context context) {
+        return explainValueExpression(expression, context);
+    }
+
+    /**
+     * Explain the rendering of a template, with one child per placeholder and section.
+     *
+     * @param template The template to render
+     * @param context The context containing values to use
+     * @return The root of the explained tree, whose result is the rendered string
+     */
+    public static ExplainNode explainTemplate(Template template, Context context) {
+        Recorder recorder = new Recorder();
+        StringBuilder out = new StringBuilder();
+        try {
+            explainSegments(template.getCompiled().getSegments(), context, out, recorder);
+            return recorder.finish(template.getCompiled().getSource(), out.toString());
+        } catch (RuntimeException e) {
+            return recorder.fail(template.getCompiled().getSource(), e);
+        }
+    }
+
+    private static void explainSegments(CompiledTemplate.Segment[] segments, Context context, StringBuilder out,
+                                        Recorder recorder) {
+        for (CompiledTemplate.Segment segment : segments) {
+            if (segment instanceof CompiledTemplate.Placeholder placeholder) {
+                recorder.value(explainPlaceholder(placeholder, context, out));
+            } else if (segment instanceof CompiledTemplate.Conditional conditional) {
+                recorder.value(explainConditional(conditional, context, out));
+            } else if (segment instanceof CompiledTemplate.Loop loop) {
+                recorder.value(explainLoop(loop, context, out));
+            } else {
+                segment.render(context, out);
+            }
+        }
+    }
+
+    private static ExplainNode explainPlaceholder(CompiledTemplate.Placeholder placeholder, Context context,
+                                                  StringBuilder out) {
+        Recorder recorder = new Recorder();
+        String spec = placeholder.format != null ? ":" + placeholder.format.getSpec() : "";
+        String label = "${" + placeholder.path + spec + "}";
+        try {
+            Object value = recorder.value(explainValueExpression(placeholder.field, context));
+            int start = out.length();
+            placeholder.write(value, out);
+            return recorder.finish(label, out.substring(start));
+        } catch (RuntimeException e) {
+            return recorder.fail(label, e);
+        }
+    }
+
+    private static ExplainNode explainConditional(CompiledTemplate.Conditional conditional, Context context,
+                                                  StringBuilder out) {
+        Recorder recorder = new Recorder();
+        String label = "${#if " + conditional.source + "}";
+        try {
+            boolean taken = (Boolean) recorder.value(explainExpression(conditional.condition, context));
+            int start = out.length();
+            explainSegments(taken ? conditional.then : conditional.otherwise, context, out, recorder);
+            return recorder.finish(label, out.substring(start));
+        } catch (RuntimeException e) {
+            return recorder.fail(label, e);
+        }
+    }
+
+    private static ExplainNode explainLoop(CompiledTemplate.Loop loop, Context context, StringBuilder out) {
+        Recorder recorder = new Recorder();
+        String label = "${#each " + loop.path + " as " + loop.variable + "}";
+        try {
+            Object source = recorder.value(explainValueExpression(loop.field, context));
+            int start = out.length();
+            ScopedContext scope = new ScopedContext(context, loop.variable);
+            for (Object element : loop.elements(source)) {
+                GuardedContext.step(scope);
+                scope.bind(element);
+                explainSegments(loop.body, scope, out, recorder);
+            }
+            return recorder.finish(label, out.substring(start));
+        } catch (RuntimeException e) {
+            return recorder.fail(label, e);
+        }
+    }
+
+    private static ExplainNode explainExpression(Expression expression, Context context) {
+        Recorder recorder = new Recorder();
+        String label = describe(expression);
+        try {
+            Object result;
+            if (expression instanceof ComparisonExpression comparison) {
+                Object left = recorder.value(explainValueExpression(comparison.getLeft(), context));
+                Object right = recorder.value(explainValueExpression(comparison.getRight(), context));
+                result = comparison.test(left, right);
+            } else if (expression instanceof TruthExpression truth) {
+                result = TruthExpression.isTruthy(recorder.value(explainValueExpression(truth.getValue(), context)));
+            } else if (expression instanceof InExpression in) {
+                result = in.contains(recorder.value(explainValueExpression(in.getValue(), context)), context);
+            } else if (expression instanceof MatchesExpression matches) {
+                result = matches.matches(recorder.value(explainValueExpression(matches.getValue(), context)), context);
+            } else {
+                result = expression.evaluate(context);
+            }
+            return recorder.finish(label, result);
+        } catch (RuntimeException e) {
+            return recorder.fail(label, e);
+        }
+    }
+
+    private static ExplainNode explainValueExpression(ValueExpression expression, Context context) {
+        Recorder recorder = new Recorder();
+        String label = describeValue(expression);
+        try {
+            Object result;
+            if (expression instanceof MathExpression math) {
+                Object left = recorder.value(explainValueExpression(math.getLeft(), context));
+                Object right = recorder.value(explainValueExpression(math.getRight(), context));
+                result = math.apply(left, right);
+            } else if (expression instanceof FieldExpression field) {
+                result = field.evaluate(context, recorder.stats);
+            } else {
+                result = expression.evaluate(context);
+            }
+            return recorder.finish(label, result);
+        } catch (RuntimeException e) {
+            return recorder.fail(label, e);
+        }
+    }
+
+    /**
+     * Describe an expression in roughly the syntax it was parsed from.
+     */
+    static String describe(Expression expression) {
+        if (expression instanceof ComparisonExpression comparison) {
+            return describeValue(comparison.getLeft()) + " " + comparison.getOperator() + " "
+                    + describeValue(comparison.getRight());
+        }
+        if (expression instanceof TruthExpression truth) {
+            return describeValue(truth.getValue());
+        }
+        if (expression instanceof InExpression in) {
+            List<String> elements = new ArrayList<>();
+            for (ValueExpression element : in.getElements()) {
+                elements.add(describeValue(element));
+            }
+            return describeValue(in.getValue()) + " in (" + String.join(", ", elements) + ")";
+        }
+        if (expression instanceof MatchesExpression matches) {
+            return describeValue(matches.getValue()) + " matches '" + matches.getPattern().pattern() + "'";
+        }
+        return expression.getClass().getSimpleName();
+    }
+
+    /**
+     * Describe a value expression in roughly the syntax it was parsed from.
+     */
+    static String describeValue(ValueExpression expression) {
+        if (expression instanceof LiteralExpression literal) {
+            return literal.getValue() instanceof String string ? "'" + string + "'" : String.valueOf(literal.getValue());
+        }
+        if (expression instanceof FieldExpression field) {
+            return field.getPath();
+        }
+        if (expression instanceof MathExpression math) {
+            return "(" + describeValue(math.getLeft()) + " " + math.getOperator() + " "
+                    + describeValue(math.getRight()) + ")";
+        }
+        return expression.getClass().getSimpleName();
+    }
+
+    private static long allocatedBytes() {
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    /**
+     * Measures one node and collects its children.
+     */
+    private static final class Recorder {
+        private final long startNanos = System.nanoTime();
+        private final long startBytes = allocatedBytes();
+        private final List<ExplainNode> children = new ArrayList<>(2);
+        private final FieldExpression.LookupStats stats = new FieldExpression.LookupStats();
+
+        /**
+         * Add a child and return its result, rethrowing its error so it propagates to this node.
+         */
+        Object value(ExplainNode child) {
+            children.add(child);
+            if (child.getError() != null) {
+                throw child.getError();
+            }
+            return child.getResult();
+        }
+
+        ExplainNode finish(String label, Object result) {
+            return build(label, result, null);
+        }
+
+        ExplainNode fail(String label, RuntimeException error) {
+            return build(label, null, error);
+        }
+
+        private ExplainNode build(String label, Object result, RuntimeException error) {
+            long nanos = System.nanoTime() - startNanos;
+            long endBytes = allocatedBytes();
+
+            int hits = stats.hits;
+            int misses = stats.misses;
+            for (ExplainNode child : children) {
+                hits += child.getLookupHits();
+                misses += child.getLookupMisses();
+            }
+
+            return new ExplainNode(label, result, error, nanos, startBytes < 0 ? -1 : endBytes - startBytes,
+                    hits, misses, children);
+        }
+    }
+}
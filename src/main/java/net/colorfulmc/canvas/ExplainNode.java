@@ -0,0 +1,127 @@
+package net.colorfulmc.canvas;
+
+import java.util.List;
+
+/**
+ * One node of an explained evaluation, as produced by {@link Explain}.
+ * <p>
+ * Timings, allocations and member lookup counts are inclusive of the node's children.
+ * Allocations also include the small overhead of recording the children themselves.
+ */
+public final class ExplainNode {
+    private final String label;
+    private final Object result;
+    private final RuntimeException error;
+    private final long nanos;
+    private final long allocatedBytes;
+    private final int lookupHits;
+    private final int lookupMisses;
+    private final List<ExplainNode> children;
+
+    ExplainNode(String label, Object result, RuntimeException error, long nanos, long allocatedBytes,
+                int lookupHits, int lookupMisses, List<ExplainNode> children) {
+        this.label = label;
+        this.result = result;
+        this.error = error;
+        this.nanos = nanos;
+        this.allocatedBytes = allocatedBytes;
+        this.lookupHits = lookupHits;
+        this.lookupMisses = lookupMisses;
+        this.children = List.copyOf(children);
+    }
+
+    /**
+     * Get a readable description of the node, e.g. {@code kills / deaths}.
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Get the value the node evaluated to, or null if it failed.
+     */
+    public Object getResult() {
+        return result;
+    }
+
+    /**
+     * Get the exception the node failed with, or null if it succeeded.
+     */
+    public RuntimeException getError() {
+        return error;
+    }
+
+    /**
+     * Get the time spent evaluating the node, in nanoseconds.
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * Get the time spent in the node itself, excluding its children, in nanoseconds.
+     */
+    public long getSelfNanos() {
+        long self = nanos;
+        for (ExplainNode child : children) {
+            self -= child.nanos;
+        }
+        return Math.max(self, 0);
+    }
+
+    /**
+     * Get the bytes allocated on the evaluating thread, or -1 if the JVM cannot measure it.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Get the number of reflective member lookups served from the accessor cache.
+     */
+    public int getLookupHits() {
+        return lookupHits;
+    }
+
+    /**
+     * Get the number of member lookups that had to be resolved through reflection first.
+     */
+    public int getLookupMisses() {
+        return lookupMisses;
+    }
+
+    /**
+     * Get the node's children, in evaluation order.
+     */
+    public List<ExplainNode> getChildren() {
+        return children;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        append(out, 0);
+        return out.toString();
+    }
+
+    private void append(StringBuilder out, int depth) {
+        out.append("  ".repeat(depth)).append(label).append(" = ");
+        if (error != null) {
+            out.append("error: ").append(error);
+        } else {
+            out.append(result);
+        }
+        out.append(" (").append(nanos).append("ns");
+        if (allocatedBytes >= 0) {
+            out.append(", ").append(allocatedBytes).append("B");
+        }
+        if (lookupHits > 0 || lookupMisses > 0) {
+            out.append(", lookups ").append(lookupHits).append(" hit / ").append(lookupMisses).append(" miss");
+        }
+        out.append(")\n");
+
+        for (ExplainNode child : children) {
+            child.append(out, depth + 1);
+        }
+    }
+}
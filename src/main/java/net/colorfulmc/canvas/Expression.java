@@ -11,5 +11,15 @@ public interface Expression {
      * @return The boolean result of the expression
      */
     boolean evaluate(Context context);
-}
 
+    /**
+     * Evaluate the expression node by node, recording each node's result, timing, allocations
+     * and member lookups. See {@link Explain}.
+     *
+     * @param context The context to evaluate against
+     * @return The root of the explained tree
+     */
+    default ExplainNode explain(Context context) {
+        return Explain.explain(this, context);
+    }
+}
@@ -0,0 +1,334 @@
+package net.colorfulmc.canvas;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary encoding of parsed expression and template trees.
+ * <p>
+ * Each node is written as a one byte tag followed by its children, so decoding is a single
+ * pass that rebuilds the tree without touching the parser. Strings are stored as a varint
+ * length followed by UTF-8 bytes. Only the node types produced by {@link ExpressionParser}
+ * and {@link CompiledTemplate} can be encoded.
+ */
+public final class ExpressionCodec {
+    /**
+     * Version of the encoding. Bumped whenever a tag is added or changed.
+     */
+    public static final int FORMAT_VERSION = 3;
+
+    private static final byte COMPARISON = 1;
+    private static final byte TRUTH = 2;
+    private static final byte IN = 3;
+    private static final byte MATCHES = 4;
+
+    private static final byte LITERAL_NULL = 10;
+    private static final byte LITERAL_STRING = 11;
+    private static final byte LITERAL_INT = 12;
+    private static final byte LITERAL_LONG = 13;
+    private static final byte LITERAL_DOUBLE = 14;
+    private static final byte LITERAL_BOOLEAN = 15;
+    private static final byte FIELD = 20;
+    private static final byte MATH = 21;
+
+    private static final byte TEXT = 30;
+    private static final byte PLACEHOLDER = 31;
+    private static final byte IF = 32;
+    private static final byte EACH = 33;
+
+    private ExpressionCodec() {
+    }
+
+    /**
+     * Encode an expression into a byte array.
+     *
+     * @param expression The expression to encode
+     * @return The encoded bytes
+     * @throws IllegalArgumentException if the tree contains a node type that cannot be encoded
+     */
+    public static byte[] encode(Expression expression) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeExpression(expression, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode an expression previously produced by {@link #encode(Expression)}.
+     *
+     * @param bytes The encoded bytes
+     * @return The decoded expression
+     * @throws IllegalArgumentException if the bytes are not a valid encoding
+     */
+    public static Expression decode(byte[] bytes) {
+        return readExpression(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Write an expression tree.
+     */
+    public static void writeExpression(Expression expression, DataOutputStream out) throws IOException {
+        if (expression instanceof ComparisonExpression comparison) {
+            out.writeByte(COMPARISON);
+            writeValue(comparison.getLeft(), out);
+            writeString(comparison.getOperator(), out);
+            writeValue(comparison.getRight(), out);
+        } else if (expression instanceof TruthExpression truth) {
+            out.writeByte(TRUTH);
+            writeValue(truth.getValue(), out);
+        } else if (expression instanceof InExpression in) {
+            out.writeByte(IN);
+            writeValue(in.getValue(), out);
+            writeVarInt(in.getElements().size(), out);
+            for (ValueExpression element : in.getElements()) {
+                writeValue(element, out);
+            }
+        } else if (expression instanceof MatchesExpression matches) {
+            out.writeByte(MATCHES);
+            writeValue(matches.getValue(), out);
+            writeString(matches.getPattern().pattern(), out);
+        } else {
+            throw unsupported(expression);
+        }
+    }
+
+    /**
+     * Write a value expression tree.
+     */
+    public static void writeValue(ValueExpression expression, DataOutputStream out) throws IOException {
+        if (expression instanceof LiteralExpression literal) {
+            writeLiteral(literal.getValue(), out);
+        } else if (expression instanceof FieldExpression field) {
+            out.writeByte(FIELD);
+            writeString(field.getPath(), out);
+        } else if (expression instanceof MathExpression math) {
+            out.writeByte(MATH);
+            writeValue(math.getLeft(), out);
+            writeString(math.getOperator(), out);
+            writeValue(math.getRight(), out);
+        } else {
+            throw unsupported(expression);
+        }
+    }
+
+    /**
+     * Write a compiled template.
+     */
+    public static void writeTemplate(CompiledTemplate template, DataOutputStream out) throws IOException {
+        writeString(template.getSource(), out);
+        writeSegments(template.getSegments(), out);
+    }
+
+    private static void writeSegments(CompiledTemplate.Segment[] segments, DataOutputStream out) throws IOException {
+        writeVarInt(segments.length, out);
+        for (CompiledTemplate.Segment segment : segments) {
+            if (segment instanceof CompiledTemplate.Text text) {
+                out.writeByte(TEXT);
+                writeString(text.text, out);
+            } else if (segment instanceof CompiledTemplate.Placeholder placeholder) {
+                out.writeByte(PLACEHOLDER);
+                writeString(placeholder.path, out);
+                writeString(placeholder.format == null ? "" : placeholder.format.getSpec(), out);
+            } else if (segment instanceof CompiledTemplate.Conditional conditional) {
+                out.writeByte(IF);
+                writeString(conditional.source, out);
+                writeExpression(conditional.condition, out);
+                writeSegments(conditional.then, out);
+                writeSegments(conditional.otherwise, out);
+            } else if (segment instanceof CompiledTemplate.Loop loop) {
+                out.writeByte(EACH);
+                writeString(loop.path, out);
+                writeString(loop.variable, out);
+                writeSegments(loop.body, out);
+            } else {
+                throw unsupported(segment);
+            }
+        }
+    }
+
+    private static void writeLiteral(Object value, DataOutputStream out) throws IOException {
+        if (value == null) {
+            out.writeByte(LITERAL_NULL);
+        } else if (value instanceof String string) {
+            out.writeByte(LITERAL_STRING);
+            writeString(string, out);
+        } else if (value instanceof Integer integer) {
+            out.writeByte(LITERAL_INT);
+            out.writeInt(integer);
+        } else if (value instanceof Long longValue) {
+            out.writeByte(LITERAL_LONG);
+            out.writeLong(longValue);
+        } else if (value instanceof Double doubleValue) {
+            out.writeByte(LITERAL_DOUBLE);
+            out.writeDouble(doubleValue);
+        } else if (value instanceof Boolean bool) {
+            out.writeByte(LITERAL_BOOLEAN);
+            out.writeBoolean(bool);
+        } else {
+            throw new IllegalArgumentException("Cannot serialize literal of type " + value.getClass().getName());
+        }
+    }
+
+    /**
+     * Read an expression tree.
+     *
+     * @throws IllegalArgumentException if the buffer does not contain a valid encoding
+     */
+    public static Expression readExpression(ByteBuffer in) {
+        try {
+            byte tag = in.get();
+            return switch (tag) {
+                case COMPARISON -> {
+                    ValueExpression left = readValue(in);
+                    String operator = readString(in);
+                    yield ComparisonExpression.of(left, operator, readValue(in));
+                }
+                case TRUTH -> new TruthExpression(readValue(in));
+                case IN -> {
+                    ValueExpression value = readValue(in);
+                    List<ValueExpression> elements = new ArrayList<>();
+                    for (int i = readLength(in); i > 0; i--) {
+                        elements.add(readValue(in));
+                    }
+                    yield new InExpression(value, elements);
+                }
+                case MATCHES -> {
+                    ValueExpression value = readValue(in);
+                    yield new MatchesExpression(value, readString(in));
+                }
+                default -> throw new IllegalArgumentException("Unknown expression tag: " + tag);
+            };
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated expression data", e);
+        }
+    }
+
+    /**
+     * Read a value expression tree.
+     *
+     * @throws IllegalArgumentException if the buffer does not contain a valid encoding
+     */
+    public static ValueExpression readValue(ByteBuffer in) {
+        try {
+            byte tag = in.get();
+            return switch (tag) {
+                case LITERAL_NULL -> new LiteralExpression(null);
+                case LITERAL_STRING -> new LiteralExpression(readString(in));
+                case LITERAL_INT -> new LiteralExpression(in.getInt());
+                case LITERAL_LONG -> new LiteralExpression(in.getLong());
+                case LITERAL_DOUBLE -> new LiteralExpression(in.getDouble());
+                case LITERAL_BOOLEAN -> new LiteralExpression(in.get() != 0);
+                case FIELD -> new FieldExpression(readString(in));
+                case MATH -> {
+                    ValueExpression left = readValue(in);
+                    String operator = readString(in);
+                    yield MathExpression.of(left, operator, readValue(in));
+                }
+                default -> throw new IllegalArgumentException("Unknown value expression tag: " + tag);
+            };
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated expression data", e);
+        }
+    }
+
+    /**
+     * Read a compiled template.
+     *
+     * @throws IllegalArgumentException if the buffer does not contain a valid encoding
+     */
+    public static CompiledTemplate readTemplate(ByteBuffer in) {
+        try {
+            String source = readString(in);
+            return new CompiledTemplate(source, readSegments(in));
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated template data", e);
+        }
+    }
+
+    private static CompiledTemplate.Segment[] readSegments(ByteBuffer in) {
+        CompiledTemplate.Segment[] segments = new CompiledTemplate.Segment[readLength(in)];
+        for (int i = 0; i < segments.length; i++) {
+            byte tag = in.get();
+            segments[i] = switch (tag) {
+                case TEXT -> new CompiledTemplate.Text(readString(in));
+                case PLACEHOLDER -> {
+                    String path = readString(in);
+                    String spec = readString(in);
+                    yield new CompiledTemplate.Placeholder(path, spec.isEmpty() ? null : PlaceholderFormat.of(spec));
+                }
+                case IF -> {
+                    String source = readString(in);
+                    Expression condition = readExpression(in);
+                    CompiledTemplate.Segment[] then = readSegments(in);
+                    yield new CompiledTemplate.Conditional(source, condition, then, readSegments(in));
+                }
+                case EACH -> {
+                    String path = readString(in);
+                    String variable = readString(in);
+                    yield new CompiledTemplate.Loop(path, variable, readSegments(in));
+                }
+                default -> throw new IllegalArgumentException("Unknown template segment tag: " + tag);
+            };
+        }
+        return segments;
+    }
+
+    static void writeString(String value, DataOutputStream out) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length, out);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = readLength(in);
+        if (in.hasArray()) {
+            String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeVarInt(int value, DataOutputStream out) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private static int readLength(ByteBuffer in) {
+        int length = readVarInt(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new IllegalArgumentException("Invalid length: " + length);
+        }
+        return length;
+    }
+
+    private static IllegalArgumentException unsupported(Object node) {
+        return new IllegalArgumentException("Cannot serialize node of type " + node.getClass().getName());
+    }
+}
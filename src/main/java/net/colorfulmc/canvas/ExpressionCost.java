@@ -0,0 +1,70 @@
+package net.colorfulmc.canvas;
+
+/**
+ * Static cost estimates for parsed expressions.
+ * <p>
+ * The cost is a unitless sum over the tree: cheap nodes like literals and arithmetic cost one,
+ * power and pattern matching cost more, and every reflective member hop along a path costs
+ * five. Aggregates cost twenty since the size of the collection is unknown until evaluation.
+ * Node types unknown to Canvas cost ten. The cost of matching a pattern does not depend on
+ * its structure; the characters the matcher reads are charged to the step budget instead.
+ */
+public final class ExpressionCost {
+    static final long NODE_COST = 1;
+    static final long HOP_COST = 1;
+    static final long POWER_COST = 4;
+    static final long MEMBER_COST = 5;
+    static final long AGGREGATE_COST = 20;
+    static final long PATTERN_COST = 10;
+    static final long UNKNOWN_COST = 10;
+
+    private ExpressionCost() {
+    }
+
+    /**
+     * Estimate the cost of evaluating an expression.
+     *
+     * @param expression The expression to estimate
+     * @return The estimated cost
+     */
+    public static long estimate(Expression expression) {
+        if (expression instanceof ComparisonExpression comparison) {
+            return NODE_COST + estimateValue(comparison.getLeft()) + estimateValue(comparison.getRight());
+        }
+        if (expression instanceof TruthExpression truth) {
+            return NODE_COST + estimateValue(truth.getValue());
+        }
+        if (expression instanceof InExpression in) {
+            long cost = NODE_COST + estimateValue(in.getValue());
+            for (ValueExpression element : in.getElements()) {
+                // Literals are folded into the lookup set
+                cost += element instanceof LiteralExpression ? 0 : estimateValue(element);
+            }
+            return cost;
+        }
+        if (expression instanceof MatchesExpression matches) {
+            return PATTERN_COST + matches.getPattern().pattern().length() + estimateValue(matches.getValue());
+        }
+        return UNKNOWN_COST;
+    }
+
+    /**
+     * Estimate the cost of evaluating a value expression.
+     *
+     * @param expression The value expression to estimate
+     * @return The estimated cost
+     */
+    public static long estimateValue(ValueExpression expression) {
+        if (expression instanceof LiteralExpression) {
+            return NODE_COST;
+        }
+        if (expression instanceof FieldExpression field) {
+            return field.estimateCost();
+        }
+        if (expression instanceof MathExpression math) {
+            long cost = math.getOperator().equals("^") ? POWER_COST : NODE_COST;
+            return cost + estimateValue(math.getLeft()) + estimateValue(math.getRight());
+        }
+        return UNKNOWN_COST;
+    }
+}
@@ -10,7 +10,8 @@ import java.util.List;
  */
 public class ExpressionParser {
     // Comparison operators
-    private static final List<String> COMPARISON_OPERATORS = Arrays.asList("==", "!=", ">=", "<=", ">", "<", "is");
+    private static final List<String> COMPARISON_OPERATORS =
+            Arrays.asList("==", "!=", ">=", "<=", ">", "<", "is", "in", "matches");
 
     // Math operators in order of precedence (lower index = higher precedence)
     private static final List<String> MATH_OPERATORS = Arrays.asList("^", "*", "/", "%", "+", "-");
@@ -39,28 +40,20 @@ public class ExpressionParser {
             String valueStr = parts[2].trim();
 
             ValueExpression left = parseValueExpression(fieldPath);
+
+            if (operator.equals("in")) {
+                return new InExpression(left, parseList(valueStr));
+            }
+            if (operator.equals("matches")) {
+                return new MatchesExpression(left, parsePattern(valueStr));
+            }
+
             ValueExpression right = parseValueExpression(valueStr);
 
-            return new ComparisonExpression(left, operator, right);
+            return ComparisonExpression.of(left, operator, right);
         } else {
-            // It's not a comparison, so return a MathExpression wrapped in a BooleanExpression
-            ValueExpression mathExpr = parseValueExpression(expr);
-            return new Expression() {
-                @Override
-                public boolean evaluate(Context context) {
-                    Object result = mathExpr.evaluate(context);
-                    if (result instanceof Boolean) {
-                        return (Boolean) result;
-                    } else if (result instanceof Number) {
-                        // Non-zero is true, zero is false
-                        return ((Number) result).doubleValue() != 0;
-                    } else if (result == null) {
-                        return false;
-                    } else {
-                        return true; // Non-null objects are true
-                    }
-                }
-            };
+            // It's not a comparison, so return a MathExpression wrapped in a TruthExpression
+            return new TruthExpression(parseValueExpression(expr));
         }
     }
 
@@ -80,7 +73,7 @@ public class ExpressionParser {
                 ValueExpression left = parseValueExpression(leftStr);
                 ValueExpression right = parseValueExpression(rightStr);
 
-                return new MathExpression(left, op, right);
+                return MathExpression.of(left, op, right);
             }
         }
 
@@ -88,6 +81,56 @@ public class ExpressionParser {
         return parseValue(expr);
     }
 
+    /**
+     * Parse a parenthesized, comma separated list such as {@code ('a', 'b', 3)}.
+     */
+    private static List<ValueExpression> parseList(String list) {
+        if (!list.startsWith("(") || !list.endsWith(")")) {
+            throw new IllegalArgumentException("Expected a parenthesized list after 'in': " + list);
+        }
+
+        List<ValueExpression> elements = new ArrayList<>();
+        String inner = list.substring(1, list.length() - 1);
+        if (inner.isBlank()) {
+            return elements;
+        }
+
+        int level = 0;
+        char quote = 0;
+        int start = 0;
+        for (int i = 0; i < inner.length(); i++) {
+            char c = inner.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '(' || c == '[') {
+                level++;
+            } else if (c == ')' || c == ']') {
+                level--;
+            } else if (c == ',' && level == 0) {
+                elements.add(parseValueExpression(inner.substring(start, i)));
+                start = i + 1;
+            }
+        }
+        elements.add(parseValueExpression(inner.substring(start)));
+
+        return elements;
+    }
+
+    /**
+     * Parse the string literal on the right of a {@code matches} operator.
+     */
+    private static String parsePattern(String pattern) {
+        ValueExpression value = parseValue(pattern);
+        if (!(value instanceof LiteralExpression literal) || !(literal.getValue() instanceof String regex)) {
+            throw new IllegalArgumentException("Expected a string literal after 'matches': " + pattern);
+        }
+        return regex;
+    }
+
     private static String[] splitByOperators(String expr, List<String> operators) {
         for (String op : operators) {
             int index = findOperatorIndex(expr, op);
@@ -105,16 +148,24 @@ public class ExpressionParser {
     }
 
     /**
-     * Find the index of an operator, but only if it's not inside parentheses
-     * and is not part of another operator.
+     * Find the index of an operator, but only if it's not inside parentheses,
+     * brackets or quotes and is not part of another operator.
      */
     private static int findOperatorIndex(String expr, String op) {
         int parenthesesLevel = 0;
+        char quote = 0;
 
         for (int i = 0; i <= expr.length() - op.length(); i++) {
-            if (expr.charAt(i) == '(') {
+            char c = expr.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '(' || c == '[') {
                 parenthesesLevel++;
-            } else if (expr.charAt(i) == ')') {
+            } else if (c == ')' || c == ']') {
                 parenthesesLevel--;
             } else if (parenthesesLevel == 0) {
                 boolean match = true;
@@ -128,7 +179,11 @@ public class ExpressionParser {
                 if (match) {
                     // Make sure we're not inside another operator (e.g. finding "=" in ">=")
                     boolean operatorBoundary = true;
-                    if (i > 0 && i + op.length() < expr.length()) {
+                    if (Character.isLetter(op.charAt(0))) {
+                        // Word operators must not be part of an identifier (e.g. finding "in" in "inventory")
+                        operatorBoundary = (i == 0 || !isIdentifierPart(expr.charAt(i - 1))) &&
+                                (i + op.length() == expr.length() || !isIdentifierPart(expr.charAt(i + op.length())));
+                    } else if (i > 0 && i + op.length() < expr.length()) {
                         char before = expr.charAt(i - 1);
                         char after = expr.charAt(i + op.length());
                         if ((before == '=' || before == '!' || before == '<' || before == '>' || before == '+' ||
@@ -149,6 +204,10 @@ public class ExpressionParser {
         return -1;
     }
 
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '$';
+    }
+
     private static ValueExpression parseValue(String value) {
         value = value.trim();
 
@@ -1,77 +1,630 @@
 package net.colorfulmc.canvas;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Expression that retrieves a value from the context by key or path.
+ * <p>
+ * A path starts with a context key and is followed by any number of steps:
+ * <ul>
+ *     <li>{@code .name} reads a map entry, a public field, an {@link Exposed} member or a record component</li>
+ *     <li>{@code [0]} reads an element of a list or array</li>
+ *     <li>{@code ["key"]} or {@code ['key']} reads a map entry</li>
+ *     <li>{@code .size}, {@code .sum}, {@code .min}, {@code .max} and {@code .any} aggregate
+ *     a collection, array or map's values, unless the map has an entry or the object a member
+ *     of that name, which is read instead</li>
+ * </ul>
+ * When a step reaches a placeholder namespace registered with a {@link PlaceholderRegistry},
+ * the rest of the path is handed to the namespace's provider instead.
+ * The path is parsed once on construction. Lists, arrays and maps are accessed directly,
+ * and reflective member lookups are resolved once per class and then cached.
  */
 public class FieldExpression implements ValueExpression {
+    // Resolved member accessors, per class and member name
+    private static final ClassValue<Map<String, Accessor>> ACCESSORS = new ClassValue<>() {
+        @Override
+        protected Map<String, Accessor> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    // Resolved for members that don't exist or can't be accessed
+    private static final Accessor MISSING = obj -> null;
+
+    // Returned by aggregate() for values that are not containers
+    static final Object NOT_AGGREGATABLE = new Object();
+
     private final String path;
+    private final String root;
+    private final Step[] steps;
+    // The path text from each step on, handed to placeholder providers
+    private final String[] suffixes;
 
+    /**
+     * Create a new FieldExpression.
+     *
+     * @param path The path to resolve, e.g. {@code player.inventory[0].amount}
+     * @throws IllegalArgumentException if the path is malformed
+     */
     public FieldExpression(String path) {
         this.path = path;
+
+        List<Step> parsed = new ArrayList<>();
+        List<String> suffixes = new ArrayList<>();
+        this.root = parsePath(path, parsed, suffixes);
+        this.steps = parsed.toArray(new Step[0]);
+        this.suffixes = suffixes.toArray(new String[0]);
     }
 
     @Override
     public Object evaluate(Context context) {
-        String[] parts = path.split("\\.");
-        if (parts.length == 0) {
+        return evaluate(context, null);
+    }
+
+    /**
+     * Evaluate the path, recording member lookups into stats when it is not null.
+     */
+    Object evaluate(Context context, LookupStats stats) {
+        GuardedContext.step(context);
+        // Namespaces are only reachable with a path, the provider resolves the rest of it
+        Object current = steps.length > 0 ? ProviderContext.find(context, root) : null;
+        if (current == null) {
+            current = context.get(root);
+        }
+
+        for (int i = 0; i < steps.length && current != null; i++) {
+            GuardedContext.step(context);
+            if (current instanceof ProviderScope scope) {
+                // The provider resolves the rest of the path itself
+                return scope.resolve(suffixes[i]);
+            }
+            current = steps[i].apply(current, context, stats);
+        }
+
+        return current;
+    }
+
+    private static String parsePath(String path, List<Step> steps, List<String> suffixes) {
+        int length = path.length();
+        int i = 0;
+        while (i < length && path.charAt(i) != '.' && path.charAt(i) != '[') {
+            i++;
+        }
+        if (i == 0) {
             throw new IllegalArgumentException("Invalid path: " + path);
         }
+        String root = path.substring(0, i);
+
+        while (i < length) {
+            char c = path.charAt(i);
+            if (c == '.') {
+                int start = ++i;
+                while (i < length && path.charAt(i) != '.' && path.charAt(i) != '[') {
+                    i++;
+                }
+                if (i == start) {
+                    throw new IllegalArgumentException("Invalid path: " + path);
+                }
+                suffixes.add(path.substring(start));
+                steps.add(nameStep(path.substring(start, i)));
+            } else if (c == '[') {
+                int close = path.indexOf(']', i);
+                if (close < 0) {
+                    throw new IllegalArgumentException("Unclosed '[' in path: " + path);
+                }
+                suffixes.add(path.substring(i));
+
+                char quote = i + 1 < length ? path.charAt(i + 1) : 0;
+                if (quote == '"' || quote == '\'') {
+                    close = path.indexOf(quote, i + 2);
+                    if (close < 0 || close + 1 >= length || path.charAt(close + 1) != ']') {
+                        throw new IllegalArgumentException("Invalid key in path: " + path);
+                    }
+                    steps.add(new KeyStep(path.substring(i + 2, close)));
+                    i = close + 2;
+                } else {
+                    try {
+                        steps.add(new IndexStep(Integer.parseInt(path.substring(i + 1, close).trim())));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid index in path: " + path, e);
+                    }
+                    i = close + 1;
+                }
+            } else {
+                throw new IllegalArgumentException("Invalid path: " + path);
+            }
+        }
 
-        Object current = context.get(parts[0]);
-        if (current == null || parts.length == 1) {
-            return current;
+        return root;
+    }
+
+    private static Step nameStep(String name) {
+        return switch (name) {
+            case "size", "sum", "min", "max", "any" -> new AggregateStep(name);
+            default -> new NameStep(name);
+        };
+    }
+
+    /**
+     * Read a named member as a path step. Reflective member accesses may run arbitrary code,
+     * so the time budget of a guarded context is checked after each of them.
+     */
+    private static Object member(Object obj, String name, Context context, LookupStats stats) {
+        Object value = getProperty(obj, name, stats);
+        if (!(obj instanceof Map)) {
+            GuardedContext.checkTime(context);
         }
+        return value;
+    }
 
-        // Navigate through the object graph using reflection
-        for (int i = 1; i < parts.length && current != null; i++) {
-            current = getProperty(current, parts[i]);
+    /**
+     * Read a named member of an object, resolving and caching the accessor on first use.
+     */
+    static Object getProperty(Object obj, String name, LookupStats stats) {
+        if (obj instanceof Map<?, ?> map) {
+            return map.get(name);
         }
 
-        return current;
+        return read(accessor(obj.getClass(), name, stats), obj);
+    }
+
+    /**
+     * Get the accessor for a named member of a class, resolving and caching it on first use.
+     */
+    private static Accessor accessor(Class<?> type, String name, LookupStats stats) {
+        Map<String, Accessor> accessors = ACCESSORS.get(type);
+        Accessor accessor = accessors.get(name);
+        if (accessor == null) {
+            accessor = resolveAccessor(type, name);
+            accessors.put(name, accessor);
+            if (stats != null) {
+                stats.misses++;
+            }
+        } else if (stats != null) {
+            stats.hits++;
+        }
+        return accessor;
+    }
+
+    private static Object read(Accessor accessor, Object obj) {
+        try {
+            return accessor.get(obj);
+        } catch (Exception e) {
+            return null;
+        }
     }
 
-    private Object getProperty(Object obj, String name) {
+    private static Accessor resolveAccessor(Class<?> type, String name) {
+        // Try getting a field directly
         try {
-            // Try getting a field directly
-            java.lang.reflect.Field field = obj.getClass().getField(name);
+            Field field = type.getField(name);
             field.setAccessible(true);
-            return field.get(obj);
+            return field::get;
         } catch (Exception ignored) {
-            // Then try a getter method
+            // Fall through to annotated members
+        }
+
+        try {
+            for (Method method : type.getMethods()) {
+                Exposed annotation = method.getAnnotation(Exposed.class);
+                if (annotation != null && annotation.name().equals(name)) {
+                    return methodAccessor(method);
+                }
+            }
+
+            for (Field field : type.getFields()) {
+                Exposed annotation = field.getAnnotation(Exposed.class);
+                if (annotation != null && annotation.name().equals(name)) {
+                    field.setAccessible(true);
+                    return field::get;
+                }
+            }
+
+            if (type.isRecord()) {
+                for (RecordComponent component : type.getRecordComponents()) {
+                    if (component.getName().equals(name)) {
+                        return methodAccessor(component.getAccessor());
+                    }
+                }
+            }
+        } catch (Exception ignored) {
+            // Inaccessible members are treated as missing
+        }
+
+        return MISSING;
+    }
+
+    /**
+     * Bind a no-argument method to a method handle, which the JIT can inline unlike Method.invoke.
+     */
+    private static Accessor methodAccessor(Method method) throws IllegalAccessException {
+        method.setAccessible(true);
+        MethodHandle handle = MethodHandles.lookup().unreflect(method)
+                .asType(MethodType.methodType(Object.class, Object.class));
+        return obj -> {
             try {
-                Method[] methods = obj.getClass().getMethods();
+                return handle.invokeExact(obj);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        };
+    }
+
+    /**
+     * Read an element of a list or array, or null if the index is out of range.
+     */
+    static Object getIndex(Object obj, int index) {
+        if (obj instanceof List<?> list) {
+            return index >= 0 && index < list.size() ? list.get(index) : null;
+        }
+        if (obj instanceof Map<?, ?> map) {
+            return map.get(index);
+        }
+        if (!obj.getClass().isArray() || index < 0 || index >= arrayLength(obj)) {
+            return null;
+        }
+
+        if (obj instanceof Object[] array) {
+            return array[index];
+        } else if (obj instanceof int[] array) {
+            return array[index];
+        } else if (obj instanceof long[] array) {
+            return array[index];
+        } else if (obj instanceof double[] array) {
+            return array[index];
+        } else if (obj instanceof float[] array) {
+            return array[index];
+        } else if (obj instanceof short[] array) {
+            return array[index];
+        } else if (obj instanceof byte[] array) {
+            return array[index];
+        } else if (obj instanceof char[] array) {
+            return array[index];
+        } else {
+            return ((boolean[]) obj)[index];
+        }
+    }
+
+    /**
+     * Get the number of elements an aggregate would visit, or 0 for non-containers.
+     */
+    private static int containerSize(Object obj) {
+        if (obj instanceof Collection<?> collection) {
+            return collection.size();
+        }
+        if (obj instanceof Map<?, ?> map) {
+            return map.size();
+        }
+        return obj.getClass().isArray() ? arrayLength(obj) : 0;
+    }
+
+    private static int arrayLength(Object array) {
+        if (array instanceof Object[] a) {
+            return a.length;
+        } else if (array instanceof int[] a) {
+            return a.length;
+        } else if (array instanceof long[] a) {
+            return a.length;
+        } else if (array instanceof double[] a) {
+            return a.length;
+        } else if (array instanceof float[] a) {
+            return a.length;
+        } else if (array instanceof short[] a) {
+            return a.length;
+        } else if (array instanceof byte[] a) {
+            return a.length;
+        } else if (array instanceof char[] a) {
+            return a.length;
+        } else {
+            return ((boolean[]) array).length;
+        }
+    }
+
+    /**
+     * Compute an aggregate over a collection, array or map's values.
+     *
+     * @return The aggregate, or {@link #NOT_AGGREGATABLE} if the object is not a container
+     */
+    static Object aggregate(Object obj, String function) {
+        if (obj instanceof Map<?, ?> map) {
+            return function.equals("size") ? map.size() : aggregate(map.values(), function);
+        }
+
+        if (obj instanceof Collection<?> collection) {
+            if (function.equals("size")) {
+                return collection.size();
+            }
+            return aggregateObjects(collection, function);
+        }
+
+        if (obj instanceof Object[] array) {
+            if (function.equals("size")) {
+                return array.length;
+            }
+            return aggregateObjects(Arrays.asList(array), function);
+        }
 
-                for (Method method : methods) {
-                    if (method.getAnnotation(Exposed.class) != null) {
-                        Exposed annotation = method.getAnnotation(Exposed.class);
+        if (obj instanceof int[] || obj instanceof long[] || obj instanceof short[] || obj instanceof byte[]) {
+            return aggregateLongs(obj, function);
+        }
+
+        if (obj instanceof double[] || obj instanceof float[]) {
+            return aggregateDoubles(obj, function);
+        }
 
-                        if (annotation.name().equals(name)) {
-                            method.setAccessible(true);
-                            return method.invoke(obj);
-                        }
+        if (obj instanceof char[] || obj instanceof boolean[]) {
+            if (function.equals("size")) {
+                return arrayLength(obj);
+            }
+            if (obj instanceof boolean[] array && function.equals("any")) {
+                for (boolean b : array) {
+                    if (b) {
+                        return true;
                     }
                 }
+                return false;
+            }
+        }
+
+        return NOT_AGGREGATABLE;
+    }
+
+    private static Object aggregateLongs(Object array, String function) {
+        int length = arrayLength(array);
+        if (function.equals("size")) {
+            return length;
+        }
+
+        long sum = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        boolean any = false;
+        for (int i = 0; i < length; i++) {
+            long value;
+            if (array instanceof int[] a) {
+                value = a[i];
+            } else if (array instanceof long[] a) {
+                value = a[i];
+            } else if (array instanceof short[] a) {
+                value = a[i];
+            } else {
+                value = ((byte[]) array)[i];
+            }
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            any |= value != 0;
+        }
+
+        return switch (function) {
+            case "sum" -> sum;
+            case "min" -> length == 0 ? null : min;
+            case "max" -> length == 0 ? null : max;
+            default -> any;
+        };
+    }
 
-                Field[] fields = obj.getClass().getFields();
+    private static Object aggregateDoubles(Object array, String function) {
+        int length = arrayLength(array);
+        if (function.equals("size")) {
+            return length;
+        }
 
-                for (Field field : fields) {
-                    if (field.getAnnotation(Exposed.class) != null) {
-                        Exposed annotation = field.getAnnotation(Exposed.class);
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        boolean any = false;
+        for (int i = 0; i < length; i++) {
+            double value = array instanceof double[] a ? a[i] : ((float[]) array)[i];
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            any |= value != 0;
+        }
+
+        return switch (function) {
+            case "sum" -> sum;
+            case "min" -> length == 0 ? null : min;
+            case "max" -> length == 0 ? null : max;
+            default -> any;
+        };
+    }
 
-                        if (annotation.name().equals(name)) {
-                            field.setAccessible(true);
-                            return field.get(obj);
-                        }
+    private static Object aggregateObjects(Collection<?> values, String function) {
+        if (function.equals("any")) {
+            if (values instanceof List<?> list && values instanceof RandomAccess) {
+                for (int i = 0, size = list.size(); i < size; i++) {
+                    if (TruthExpression.isTruthy(list.get(i))) {
+                        return true;
                     }
                 }
+                return false;
+            }
+            for (Object value : values) {
+                if (TruthExpression.isTruthy(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Stay on longs while every element is integral, switch to doubles on the first floating value
+        long longSum = 0;
+        long longMin = Long.MAX_VALUE;
+        long longMax = Long.MIN_VALUE;
+        double doubleSum = 0;
+        double doubleMin = Double.POSITIVE_INFINITY;
+        double doubleMax = Double.NEGATIVE_INFINITY;
+        boolean floating = false;
+        int count = 0;
+
+        Iterator<?> iterator = values.iterator();
+        while (iterator.hasNext()) {
+            Object value = iterator.next();
+            if (!(value instanceof Number number)) {
+                throw new IllegalArgumentException("Cannot " + function + " non-numeric value: " + value);
+            }
+
+            if (!floating && (number instanceof Integer || number instanceof Long
+                    || number instanceof Short || number instanceof Byte)) {
+                long l = number.longValue();
+                longSum += l;
+                longMin = Math.min(longMin, l);
+                longMax = Math.max(longMax, l);
+            } else {
+                if (!floating) {
+                    floating = true;
+                    doubleSum = longSum;
+                    doubleMin = count == 0 ? Double.POSITIVE_INFINITY : longMin;
+                    doubleMax = count == 0 ? Double.NEGATIVE_INFINITY : longMax;
+                }
+                double d = number.doubleValue();
+                doubleSum += d;
+                doubleMin = Math.min(doubleMin, d);
+                doubleMax = Math.max(doubleMax, d);
+            }
+            count++;
+        }
+
+        if (count == 0) {
+            return function.equals("sum") ? (Object) 0L : null;
+        }
+
+        return switch (function) {
+            case "sum" -> floating ? (Object) doubleSum : (Object) longSum;
+            case "min" -> floating ? (Object) doubleMin : (Object) longMin;
+            default -> floating ? (Object) doubleMax : (Object) longMax;
+        };
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    /**
+     * Estimate the relative cost of resolving this path, see {@link ExpressionCost}.
+     */
+    long estimateCost() {
+        long cost = ExpressionCost.HOP_COST;
+        for (Step step : steps) {
+            if (step instanceof NameStep || step instanceof KeyStep) {
+                cost += ExpressionCost.MEMBER_COST;
+            } else if (step instanceof AggregateStep) {
+                cost += ExpressionCost.AGGREGATE_COST;
+            } else {
+                cost += ExpressionCost.HOP_COST;
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * Counts of reflective member lookups served from the accessor cache (hits)
+     * and lookups that had to resolve the member first (misses).
+     */
+    static final class LookupStats {
+        int hits;
+        int misses;
+    }
+
+    /**
+     * Reads a member of an already resolved class.
+     */
+    @FunctionalInterface
+    private interface Accessor {
+        Object get(Object obj) throws Exception;
+    }
+
+    /**
+     * One step along a path.
+     */
+    private interface Step {
+        Object apply(Object current, Context context, LookupStats stats);
+    }
+
+    private static final class NameStep implements Step {
+        private final String name;
+
+        NameStep(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Object apply(Object current, Context context, LookupStats stats) {
+            return member(current, name, context, stats);
+        }
+    }
+
+    private static final class IndexStep implements Step {
+        private final int index;
+
+        IndexStep(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public Object apply(Object current, Context context, LookupStats stats) {
+            return getIndex(current, index);
+        }
+    }
+
+    private static final class KeyStep implements Step {
+        private final String key;
+
+        KeyStep(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public Object apply(Object current, Context context, LookupStats stats) {
+            return member(current, key, context, stats);
+        }
+    }
+
+    private static final class AggregateStep implements Step {
+        private final String function;
+
+        AggregateStep(String function) {
+            this.function = function;
+        }
+
+        @Override
+        public Object apply(Object current, Context context, LookupStats stats) {
+            // An entry or member with this name takes precedence over the aggregate
+            if (current instanceof Map<?, ?> map) {
+                if (map.containsKey(function)) {
+                    return map.get(function);
+                }
+            } else if (!current.getClass().isArray()) {
+                Accessor accessor = accessor(current.getClass(), function, stats);
+                if (accessor != MISSING) {
+                    Object value = read(accessor, current);
+                    GuardedContext.checkTime(context);
+                    return value;
+                }
+            }
 
-                return null;
-            } catch (Exception e) {
-                return null;
+            if (!function.equals("size")) {
+                // Aggregates walk every element, so charge for each of them
+                GuardedContext.charge(context, containerSize(current));
             }
+            Object result = aggregate(current, function);
+            return result == NOT_AGGREGATABLE ? null : result;
         }
     }
 }
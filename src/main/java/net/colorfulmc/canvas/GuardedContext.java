@@ -0,0 +1,160 @@
+package net.colorfulmc.canvas;
+
+/**
+ * Context wrapper that meters the evaluation running against it.
+ * <p>
+ * Expression nodes charge a step to the context for every node evaluated and every path hop
+ * taken, and aggregates and template loops charge one step per element. Once the step budget
+ * or the time budget is used up the evaluation is aborted with an
+ * {@link EvaluationBudgetExceededException}.
+ * A GuardedContext meters a single evaluation; create a new one for every evaluation.
+ * The time budget is checked on the first step, after every reflective member access and
+ * otherwise every few steps. A single slow member access cannot be interrupted, but the
+ * evaluation is aborted as soon as it returns.
+ */
+public class GuardedContext implements Context {
+    // Reading the clock on every step would dominate cheap steps
+    private static final int CLOCK_INTERVAL = 64;
+
+    private final Context delegate;
+    private final Budget budget;
+
+    /**
+     * Create a new GuardedContext.
+     *
+     * @param delegate The context to read values from
+     * @param limits The step and time limits for the evaluation
+     */
+    public GuardedContext(Context delegate, EvaluationLimits limits) {
+        this(delegate, new Budget(limits.getMaxSteps(), limits.getMaxNanos()));
+    }
+
+    private GuardedContext(Context delegate, Budget budget) {
+        this.delegate = delegate;
+        this.budget = budget;
+    }
+
+    Context getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public Object get(String key) {
+        return delegate.get(key);
+    }
+
+    @Override
+    public Context with(String key, Object value) {
+        // Derived contexts draw from the same budget
+        return new GuardedContext(delegate.with(key, value), budget);
+    }
+
+    /**
+     * Get the number of steps charged so far.
+     */
+    public long getSteps() {
+        return budget.steps;
+    }
+
+    /**
+     * Charge a single step if the context is guarded.
+     *
+     * @param context The context being evaluated against
+     * @throws EvaluationBudgetExceededException if the budget is used up
+     */
+    static void step(Context context) {
+        charge(context, 1);
+    }
+
+    /**
+     * Charge several steps at once if the context is guarded.
+     *
+     * @param context The context being evaluated against
+     * @param steps The number of steps to charge
+     * @throws EvaluationBudgetExceededException if the budget is used up
+     */
+    static void charge(Context context, long steps) {
+        Budget budget = budget(context);
+        if (budget != null) {
+            budget.charge(steps);
+        }
+    }
+
+    /**
+     * Check the time budget now if the context is guarded, e.g. after a member access that
+     * may have run arbitrary code.
+     *
+     * @param context The context being evaluated against
+     * @throws EvaluationBudgetExceededException if the time budget is used up
+     */
+    static void checkTime(Context context) {
+        Budget budget = budget(context);
+        if (budget != null) {
+            budget.checkTime();
+        }
+    }
+
+    /**
+     * Check whether evaluating against a context is metered.
+     *
+     * @param context The context being evaluated against
+     * @return true if the context is, or is layered on top of, a guarded context
+     */
+    static boolean isGuarded(Context context) {
+        return budget(context) != null;
+    }
+
+    private static Budget budget(Context context) {
+        // Loop variables and placeholder providers are layered on top of the guarded context
+        while (true) {
+            if (context instanceof ScopedContext scope) {
+                context = scope.getParent();
+            } else if (context instanceof ProviderContext providers) {
+                context = providers.getBase();
+            } else {
+                break;
+            }
+        }
+        return context instanceof GuardedContext guarded ? guarded.budget : null;
+    }
+
+    /**
+     * Step and time counters shared by a guarded context and everything derived from it.
+     */
+    private static final class Budget {
+        private final long maxSteps;
+        private final long maxNanos;
+        private final long startNanos;
+        private long steps;
+        private long nextClockCheck;
+
+        Budget(long maxSteps, long maxNanos) {
+            this.maxSteps = maxSteps;
+            this.maxNanos = maxNanos;
+            this.startNanos = System.nanoTime();
+            // Check on the first step, so short evaluations are timed too
+            this.nextClockCheck = 0;
+        }
+
+        void charge(long count) {
+            steps += count;
+            if (steps > maxSteps) {
+                throw new EvaluationBudgetExceededException(
+                        "Evaluation exceeded its budget of " + maxSteps + " steps", steps, System.nanoTime() - startNanos);
+            }
+
+            if (steps >= nextClockCheck) {
+                checkTime();
+            }
+        }
+
+        void checkTime() {
+            nextClockCheck = steps + CLOCK_INTERVAL;
+            long elapsed = System.nanoTime() - startNanos;
+            if (elapsed > maxNanos) {
+                throw new EvaluationBudgetExceededException(
+                        "Evaluation exceeded its time budget of " + maxNanos + "ns", steps, elapsed);
+            }
+        }
+    }
+}
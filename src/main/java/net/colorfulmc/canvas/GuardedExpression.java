@@ -0,0 +1,56 @@
+package net.colorfulmc.canvas;
+
+/**
+ * Expression wrapper for untrusted, user-authored expressions.
+ * <p>
+ * The wrapped expression's static cost is checked once on construction, and every evaluation
+ * runs against a fresh {@link GuardedContext} that aborts it with an
+ * {@link EvaluationBudgetExceededException} when it exceeds its step or time budget.
+ */
+public class GuardedExpression implements Expression {
+    private final Expression expression;
+    private final EvaluationLimits limits;
+    private final long cost;
+
+    /**
+     * Create a new GuardedExpression.
+     *
+     * @param expression The expression to guard
+     * @param limits The limits to enforce
+     * @throws IllegalArgumentException if the expression's estimated cost exceeds the limit
+     */
+    public GuardedExpression(Expression expression, EvaluationLimits limits) {
+        this.expression = expression;
+        this.limits = limits;
+        this.cost = ExpressionCost.estimate(expression);
+
+        if (cost > limits.getMaxCost()) {
+            throw new IllegalArgumentException(
+                    "Expression cost " + cost + " exceeds the limit of " + limits.getMaxCost());
+        }
+    }
+
+    /**
+     * Parse an expression string and guard it.
+     *
+     * @param expr The expression string to parse
+     * @param limits The limits to enforce
+     * @return The guarded expression
+     * @throws IllegalArgumentException if the expression is invalid or too costly
+     */
+    public static GuardedExpression parse(String expr, EvaluationLimits limits) {
+        return new GuardedExpression(ExpressionParser.parse(expr), limits);
+    }
+
+    @Override
+    public boolean evaluate(Context context) {
+        return expression.evaluate(new GuardedContext(context, limits));
+    }
+
+    /**
+     * Get the estimated cost of the guarded expression.
+     */
+    public long getCost() {
+        return cost;
+    }
+}
@@ -0,0 +1,122 @@
+package net.colorfulmc.canvas;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Expression that checks whether a value is one of a list of values, e.g. {@code world in ('lobby', 'hub')}.
+ * <p>
+ * Literal elements are compiled into lookup structures once: whole numbers into a primitive hash
+ * set keyed by their long value, other numbers into one keyed by their double value, and
+ * everything else into a hash set. Membership is then a single lookup no matter how long the
+ * list is. Numbers are compared by value, so {@code 5 in (5.0)} holds. Non-literal elements
+ * are evaluated and compared one by one.
+ */
+public class InExpression implements Expression {
+    private final ValueExpression value;
+    private final List<ValueExpression> elements;
+    private final LongHashSet wholes;
+    private final LongHashSet fractions;
+    private final Set<Object> objects;
+    private final ValueExpression[] dynamic;
+
+    /**
+     * Create a new InExpression.
+     *
+     * @param value The value to look up
+     * @param elements The values to look in
+     */
+    public InExpression(ValueExpression value, List<ValueExpression> elements) {
+        this.value = value;
+        this.elements = List.copyOf(elements);
+
+        LongHashSet wholes = new LongHashSet(elements.size());
+        LongHashSet fractions = new LongHashSet(elements.size());
+        Set<Object> objects = new HashSet<>();
+        List<ValueExpression> dynamic = new ArrayList<>();
+        for (ValueExpression element : elements) {
+            if (element instanceof LiteralExpression literal) {
+                if (literal.getValue() instanceof Number number) {
+                    (isWhole(number) ? wholes : fractions).add(numberKey(number));
+                } else {
+                    objects.add(literal.getValue());
+                }
+            } else {
+                dynamic.add(element);
+            }
+        }
+
+        this.wholes = wholes;
+        this.fractions = fractions;
+        this.objects = objects;
+        this.dynamic = dynamic.toArray(new ValueExpression[0]);
+    }
+
+    @Override
+    public boolean evaluate(Context context) {
+        GuardedContext.charge(context, 1 + dynamic.length);
+        return contains(value.evaluate(context), context);
+    }
+
+    /**
+     * Check whether an already evaluated value is in the list.
+     */
+    boolean contains(Object val, Context context) {
+        if (val instanceof Number number) {
+            if ((isWhole(number) ? wholes : fractions).contains(numberKey(number))) {
+                return true;
+            }
+        } else if (objects.contains(val)) {
+            return true;
+        }
+
+        for (ValueExpression element : dynamic) {
+            Object other = element.evaluate(context);
+            if (val instanceof Number a && other instanceof Number b
+                    ? isWhole(a) == isWhole(b) && numberKey(a) == numberKey(b)
+                    : ComparisonExpression.equals(val, other)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Check whether a number is keyed by its long value rather than its double bits.
+     */
+    private static boolean isWhole(Number number) {
+        if (isIntegral(number)) {
+            return true;
+        }
+        double d = number.doubleValue();
+        return d == Math.rint(d) && d >= -0x1p63 && d < 0x1p63;
+    }
+
+    /**
+     * Map a number to a set key so that numerically equal values of different types collide.
+     * Integral values are keyed exactly, as doubles cannot tell longs above 2^53 apart.
+     */
+    private static long numberKey(Number number) {
+        if (isIntegral(number)) {
+            return number.longValue();
+        }
+        double d = number.doubleValue();
+        // Whole doubles, including -0.0, collide with the equal long; doubleToLongBits folds every NaN into one
+        return isWhole(number) ? (long) d : Double.doubleToLongBits(d);
+    }
+
+    private static boolean isIntegral(Number number) {
+        return number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte;
+    }
+
+    ValueExpression getValue() {
+        return value;
+    }
+
+    List<ValueExpression> getElements() {
+        return elements;
+    }
+}
@@ -14,4 +14,8 @@ public class LiteralExpression implements ValueExpression {
     public Object evaluate(Context context) {
         return value;
     }
+
+    Object getValue() {
+        return value;
+    }
 }
@@ -0,0 +1,98 @@
+package net.colorfulmc.canvas;
+
+import java.util.regex.Pattern;
+
+/**
+ * Expression that checks whether a value's string form fully matches a regular expression,
+ * e.g. {@code name matches '[A-Z].*'}. The pattern is compiled once on construction.
+ * <p>
+ * Against a {@link GuardedContext}, every character the matcher reads is charged to the
+ * budget, so patterns that backtrack catastrophically are aborted like any other runaway
+ * evaluation.
+ */
+public class MatchesExpression implements Expression {
+    private final ValueExpression value;
+    private final Pattern pattern;
+
+    /**
+     * Create a new MatchesExpression.
+     *
+     * @param value The value to match
+     * @param regex The regular expression to match against
+     * @throws java.util.regex.PatternSyntaxException if the regular expression is invalid
+     */
+    public MatchesExpression(ValueExpression value, String regex) {
+        this.value = value;
+        this.pattern = Pattern.compile(regex);
+    }
+
+    @Override
+    public boolean evaluate(Context context) {
+        return matches(value.evaluate(context), context);
+    }
+
+    /**
+     * Check whether an already evaluated value matches the pattern.
+     */
+    boolean matches(Object val, Context context) {
+        if (val == null) {
+            return false;
+        }
+
+        String text = val.toString();
+        if (!GuardedContext.isGuarded(context)) {
+            return pattern.matcher(text).matches();
+        }
+        GuardedContext.step(context);
+        return pattern.matcher(new MeteredText(text, context)).matches();
+    }
+
+    ValueExpression getValue() {
+        return value;
+    }
+
+    Pattern getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Text that charges a step for every few characters the matcher reads.
+     */
+    private static final class MeteredText implements CharSequence {
+        // Well-behaved patterns read each character about once
+        private static final int READS_PER_STEP = 16;
+
+        private final String text;
+        private final Context context;
+        private int reads;
+
+        MeteredText(String text, Context context) {
+            this.text = text;
+            this.context = context;
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (++reads == READS_PER_STEP) {
+                reads = 0;
+                GuardedContext.step(context);
+            }
+            return text.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return text.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+}
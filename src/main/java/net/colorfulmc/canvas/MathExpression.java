@@ -14,11 +14,38 @@ public class MathExpression implements ValueExpression {
         this.right = right;
     }
 
+    /**
+     * Create a math expression specialized for its operator.
+     * The returned node adapts itself to the operand types it observes, so repeated evaluations
+     * with the same types take a short, type-specific path.
+     *
+     * @param left The left operand
+     * @param operator The math operator
+     * @param right The right operand
+     * @return The specialized expression, or a generic one for unknown operators
+     */
+    public static MathExpression of(ValueExpression left, String operator, ValueExpression right) {
+        return switch (operator) {
+            case "+" -> new MathNodes.Add(left, right);
+            case "-" -> new MathNodes.Subtract(left, right);
+            case "*" -> new MathNodes.Multiply(left, right);
+            case "/" -> new MathNodes.Divide(left, right);
+            case "%" -> new MathNodes.Modulo(left, right);
+            case "^" -> new MathNodes.Power(left, right);
+            default -> new MathExpression(left, operator, right);
+        };
+    }
+
     @Override
     public Object evaluate(Context context) {
-        Object leftVal = left.evaluate(context);
-        Object rightVal = right.evaluate(context);
+        GuardedContext.step(context);
+        return apply(left.evaluate(context), right.evaluate(context));
+    }
 
+    /**
+     * Apply the operator to already evaluated operands.
+     */
+    Object apply(Object leftVal, Object rightVal) {
         // Convert to numbers
         Number leftNum = convertToNumber(leftVal);
         Number rightNum = convertToNumber(rightVal);
@@ -34,7 +61,7 @@ public class MathExpression implements ValueExpression {
         };
     }
 
-    private Number convertToNumber(Object value) {
+    static Number convertToNumber(Object value) {
         if (value == null) {
             throw new IllegalArgumentException("Cannot perform math operations on null values");
         }
@@ -59,7 +86,7 @@ public class MathExpression implements ValueExpression {
         throw new IllegalArgumentException("Cannot convert to number: " + value);
     }
 
-    private Number add(Number a, Number b) {
+    static Number add(Number a, Number b) {
         if (a instanceof Double || b instanceof Double) {
             return a.doubleValue() + b.doubleValue();
         } else {
@@ -67,7 +94,7 @@ public class MathExpression implements ValueExpression {
         }
     }
 
-    private Number subtract(Number a, Number b) {
+    static Number subtract(Number a, Number b) {
         if (a instanceof Double || b instanceof Double) {
             return a.doubleValue() - b.doubleValue();
         } else {
@@ -75,7 +102,7 @@ public class MathExpression implements ValueExpression {
         }
     }
 
-    private Number multiply(Number a, Number b) {
+    static Number multiply(Number a, Number b) {
         if (a instanceof Double || b instanceof Double) {
             return a.doubleValue() * b.doubleValue();
         } else {
@@ -83,7 +110,7 @@ public class MathExpression implements ValueExpression {
         }
     }
 
-    private Number divide(Number a, Number b) {
+    static Number divide(Number a, Number b) {
         if (b.doubleValue() == 0) {
             throw new ArithmeticException("Division by zero");
         }
@@ -92,7 +119,7 @@ public class MathExpression implements ValueExpression {
         return a.doubleValue() / b.doubleValue();
     }
 
-    private Number modulo(Number a, Number b) {
+    static Number modulo(Number a, Number b) {
         if (b.doubleValue() == 0) {
             throw new ArithmeticException("Modulo by zero");
         }
@@ -104,7 +131,19 @@ public class MathExpression implements ValueExpression {
         }
     }
 
-    private Number power(Number a, Number b) {
+    static Number power(Number a, Number b) {
         return Math.pow(a.doubleValue(), b.doubleValue());
     }
+
+    ValueExpression getLeft() {
+        return left;
+    }
+
+    String getOperator() {
+        return operator;
+    }
+
+    ValueExpression getRight() {
+        return right;
+    }
 }
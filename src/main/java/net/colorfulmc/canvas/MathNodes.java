@@ -0,0 +1,195 @@
+package net.colorfulmc.canvas;
+
+/**
+ * Self-specializing math nodes, one class per operator.
+ * <p>
+ * Each node starts uninitialized and picks a specialization from the operand types of its
+ * first evaluation, e.g. long arithmetic when both operands are {@code Integer} or {@code Long}.
+ * Later evaluations check the specialization's guard and take the short path; the first time
+ * the guard fails the node rewrites itself to the generic path in {@link MathExpression} for
+ * good. The state is a plain field: racing threads may overwrite each other's transition and
+ * re-specialize a node, which only costs extra guard failures, because every path is guarded
+ * and gives the same result as the generic one.
+ */
+final class MathNodes {
+    static final byte UNINITIALIZED = 0;
+    static final byte LONG = 1;
+    static final byte DOUBLE = 2;
+    static final byte GENERIC = 3;
+
+    private MathNodes() {
+    }
+
+    static boolean isIntegral(Object value) {
+        return value instanceof Integer || value instanceof Long;
+    }
+
+    /**
+     * Pick the specialization for +, -, * and %, which produce longs unless an operand is a Double.
+     */
+    static byte specializeArithmetic(Object a, Object b) {
+        if (isIntegral(a) && isIntegral(b)) {
+            return LONG;
+        }
+        if (a instanceof Double && b instanceof Double) {
+            return DOUBLE;
+        }
+        return GENERIC;
+    }
+
+    /**
+     * Pick the specialization for / and ^, which always produce doubles.
+     */
+    static byte specializeFloating(Object a, Object b) {
+        return a instanceof Number && b instanceof Number ? DOUBLE : GENERIC;
+    }
+
+    static final class Add extends MathExpression {
+        private byte state;
+
+        Add(ValueExpression left, ValueExpression right) {
+            super(left, "+", right);
+        }
+
+        @Override
+        Object apply(Object a, Object b) {
+            if (state == LONG && isIntegral(a) && isIntegral(b)) {
+                return ((Number) a).longValue() + ((Number) b).longValue();
+            }
+            if (state == DOUBLE && a instanceof Double x && b instanceof Double y) {
+                return x + y;
+            }
+            return respecialize(a, b);
+        }
+
+        private Object respecialize(Object a, Object b) {
+            state = state == UNINITIALIZED ? specializeArithmetic(a, b) : GENERIC;
+            return state == GENERIC ? super.apply(a, b) : apply(a, b);
+        }
+    }
+
+    static final class Subtract extends MathExpression {
+        private byte state;
+
+        Subtract(ValueExpression left, ValueExpression right) {
+            super(left, "-", right);
+        }
+
+        @Override
+        Object apply(Object a, Object b) {
+            if (state == LONG && isIntegral(a) && isIntegral(b)) {
+                return ((Number) a).longValue() - ((Number) b).longValue();
+            }
+            if (state == DOUBLE && a instanceof Double x && b instanceof Double y) {
+                return x - y;
+            }
+            return respecialize(a, b);
+        }
+
+        private Object respecialize(Object a, Object b) {
+            state = state == UNINITIALIZED ? specializeArithmetic(a, b) : GENERIC;
+            return state == GENERIC ? super.apply(a, b) : apply(a, b);
+        }
+    }
+
+    static final class Multiply extends MathExpression {
+        private byte state;
+
+        Multiply(ValueExpression left, ValueExpression right) {
+            super(left, "*", right);
+        }
+
+        @Override
+        Object apply(Object a, Object b) {
+            if (state == LONG && isIntegral(a) && isIntegral(b)) {
+                return ((Number) a).longValue() * ((Number) b).longValue();
+            }
+            if (state == DOUBLE && a instanceof Double x && b instanceof Double y) {
+                return x * y;
+            }
+            return respecialize(a, b);
+        }
+
+        private Object respecialize(Object a, Object b) {
+            state = state == UNINITIALIZED ? specializeArithmetic(a, b) : GENERIC;
+            return state == GENERIC ? super.apply(a, b) : apply(a, b);
+        }
+    }
+
+    static final class Modulo extends MathExpression {
+        private byte state;
+
+        Modulo(ValueExpression left, ValueExpression right) {
+            super(left, "%", right);
+        }
+
+        @Override
+        Object apply(Object a, Object b) {
+            if (state == LONG && isIntegral(a) && isIntegral(b)) {
+                long divisor = ((Number) b).longValue();
+                if (divisor == 0) {
+                    throw new ArithmeticException("Modulo by zero");
+                }
+                return ((Number) a).longValue() % divisor;
+            }
+            if (state == DOUBLE && a instanceof Double x && b instanceof Double y) {
+                if (y == 0) {
+                    throw new ArithmeticException("Modulo by zero");
+                }
+                return x % y;
+            }
+            return respecialize(a, b);
+        }
+
+        private Object respecialize(Object a, Object b) {
+            state = state == UNINITIALIZED ? specializeArithmetic(a, b) : GENERIC;
+            return state == GENERIC ? super.apply(a, b) : apply(a, b);
+        }
+    }
+
+    static final class Divide extends MathExpression {
+        private byte state;
+
+        Divide(ValueExpression left, ValueExpression right) {
+            super(left, "/", right);
+        }
+
+        @Override
+        Object apply(Object a, Object b) {
+            if (state == DOUBLE && a instanceof Number x && b instanceof Number y) {
+                double divisor = y.doubleValue();
+                if (divisor == 0) {
+                    throw new ArithmeticException("Division by zero");
+                }
+                return x.doubleValue() / divisor;
+            }
+            return respecialize(a, b);
+        }
+
+        private Object respecialize(Object a, Object b) {
+            state = state == UNINITIALIZED ? specializeFloating(a, b) : GENERIC;
+            return state == GENERIC ? super.apply(a, b) : apply(a, b);
+        }
+    }
+
+    static final class Power extends MathExpression {
+        private byte state;
+
+        Power(ValueExpression left, ValueExpression right) {
+            super(left, "^", right);
+        }
+
+        @Override
+        Object apply(Object a, Object b) {
+            if (state == DOUBLE && a instanceof Number x && b instanceof Number y) {
+                return Math.pow(x.doubleValue(), y.doubleValue());
+            }
+            return respecialize(a, b);
+        }
+
+        private Object respecialize(Object a, Object b) {
+            state = state == UNINITIALIZED ? specializeFloating(a, b) : GENERIC;
+            return state == GENERIC ? super.apply(a, b) : apply(a, b);
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package net.colorfulmc.canvas;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.IllegalFormatConversionException;
+import java.util.IllegalFormatException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable, thread-safe formatter for a placeholder format specifier such as
+ * {@code %,.2f} in {@code ${score:%,.2f}} or {@code <16} in {@code ${name:<16}}.
+ * <p>
+ * Two kinds of specifiers are supported:
+ * <ul>
+ *     <li>printf-style: any specifier accepted by {@link String#format}. The flags
+ *     {@code - + , 0} and space with the conversions {@code d f x X s S} are formatted
+ *     directly; other flags and conversions, and values these conversions do not format
+ *     exactly, are delegated to {@link String#format}. Output always uses {@link Locale#ROOT}.</li>
+ *     <li>alignment: {@code [fill][<>^]width}, padding the value's string form to the left,
+ *     right or center.</li>
+ * </ul>
+ * Specifiers are parsed once and written straight into the output buffer when rendering.
+ */
+public final class PlaceholderFormat {
+    private static final int MAX_CACHED_SPECS = 1024;
+    private static final Map<String, PlaceholderFormat> CACHE = new ConcurrentHashMap<>();
+
+    private final String spec;
+    private final char conversion;
+    private final boolean leftJustify;
+    private final boolean zeroPad;
+    private final boolean grouping;
+    private final boolean plusSign;
+    private final boolean spaceSign;
+    private final int width;
+    private final int precision;
+    private final char fill;
+    private final char alignment;
+
+    private PlaceholderFormat(String spec, char conversion, boolean leftJustify, boolean zeroPad, boolean grouping,
+                              boolean plusSign, boolean spaceSign, int width, int precision, char fill, char alignment) {
+        this.spec = spec;
+        this.conversion = conversion;
+        this.leftJustify = leftJustify;
+        this.zeroPad = zeroPad;
+        this.grouping = grouping;
+        this.plusSign = plusSign;
+        this.spaceSign = spaceSign;
+        this.width = width;
+        this.precision = precision;
+        this.fill = fill;
+        this.alignment = alignment;
+    }
+
+    /**
+     * Parse a format specifier, reusing a previously parsed instance when possible.
+     *
+     * @param spec The format specifier, without the leading colon
+     * @return The parsed format
+     * @throws IllegalArgumentException if the specifier is malformed
+     */
+    public static PlaceholderFormat of(String spec) {
+        PlaceholderFormat format = CACHE.get(spec);
+        if (format == null) {
+            format = parse(spec);
+            // Keep memory bounded, specifiers come from user-supplied templates
+            if (CACHE.size() >= MAX_CACHED_SPECS) {
+                CACHE.clear();
+            }
+            CACHE.putIfAbsent(spec, format);
+        }
+        return format;
+    }
+
+    private static PlaceholderFormat parse(String spec) {
+        if (spec.startsWith("%")) {
+            return parsePrintf(spec);
+        }
+
+        // [fill][<>^]width
+        int alignIndex = spec.length() > 1 && isAlignment(spec.charAt(1)) ? 1 : 0;
+        if (spec.isEmpty() || !isAlignment(spec.charAt(alignIndex))) {
+            throw new IllegalArgumentException("Invalid format specifier: " + spec);
+        }
+
+        char fill = alignIndex == 1 ? spec.charAt(0) : ' ';
+        int width = parseNumber(spec, alignIndex + 1, spec.length());
+        return new PlaceholderFormat(spec, '\0', false, false, false, false, false, width, -1, fill,
+                spec.charAt(alignIndex));
+    }
+
+    private static PlaceholderFormat parsePrintf(String spec) {
+        boolean leftJustify = false, zeroPad = false, grouping = false, plusSign = false, spaceSign = false;
+        // Set for flags that are only handled by String.format
+        boolean delegate = false;
+
+        int i = 1;
+        flags:
+        for (; i < spec.length(); i++) {
+            switch (spec.charAt(i)) {
+                case '-' -> leftJustify = true;
+                case '0' -> zeroPad = true;
+                case ',' -> grouping = true;
+                case '+' -> plusSign = true;
+                case ' ' -> spaceSign = true;
+                case '(', '#' -> delegate = true;
+                default -> {
+                    break flags;
+                }
+            }
+        }
+
+        int widthStart = i;
+        while (i < spec.length() && Character.isDigit(spec.charAt(i))) {
+            i++;
+        }
+        int width = i > widthStart ? parseNumber(spec, widthStart, i) : -1;
+
+        int precision = -1;
+        if (i < spec.length() && spec.charAt(i) == '.') {
+            int precisionStart = ++i;
+            while (i < spec.length() && Character.isDigit(spec.charAt(i))) {
+                i++;
+            }
+            precision = parseNumber(spec, precisionStart, i);
+        }
+
+        // Two character conversions such as %tY are handed to String.format as well
+        char conversion = i == spec.length() - 1 && !delegate ? spec.charAt(i) : '\0';
+        if ("dfxXsS".indexOf(conversion) < 0) {
+            conversion = '\0';
+        }
+
+        // Validate against String.format, so both paths accept the same specifiers
+        Object sample = switch (conversion) {
+            case 'f' -> 0.0;
+            case 's', 'S' -> "";
+            default -> 0;
+        };
+        try {
+            String.format(Locale.ROOT, spec, sample);
+        } catch (IllegalFormatConversionException e) {
+            if (conversion != '\0') {
+                throw new IllegalArgumentException("Invalid format specifier: " + spec, e);
+            }
+            // Valid specifier that just doesn't accept an integer
+        } catch (IllegalFormatException e) {
+            throw new IllegalArgumentException("Invalid format specifier: " + spec, e);
+        }
+
+        return new PlaceholderFormat(spec, conversion, leftJustify, zeroPad, grouping, plusSign, spaceSign,
+                width, precision, ' ', '\0');
+    }
+
+    private static boolean isAlignment(char c) {
+        return c == '<' || c == '>' || c == '^';
+    }
+
+    private static int parseNumber(String spec, int from, int to) {
+        try {
+            return Integer.parseInt(spec, from, to, 10);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid format specifier: " + spec, e);
+        }
+    }
+
+    /**
+     * Get the format specifier this format was parsed from.
+     *
+     * @return The format specifier
+     */
+    public String getSpec() {
+        return spec;
+    }
+
+    /**
+     * Format a value and append it to the output.
+     *
+     * @param value The value to format
+     * @param out The buffer to append to
+     */
+    public void format(Object value, StringBuilder out) {
+        int start = out.length();
+
+        if (alignment != '\0') {
+            out.append(value);
+            align(out, start);
+            return;
+        }
+
+        switch (conversion) {
+            case 'd' -> appendInteger(value, out);
+            case 'f' -> appendFixed(value, out);
+            case 'x', 'X' -> appendHex(value, out);
+            case 's', 'S' -> appendString(value, out, start);
+            default -> out.append(String.format(Locale.ROOT, spec, value));
+        }
+
+        if (conversion != '\0') {
+            pad(out, start);
+        }
+    }
+
+    private void appendInteger(Object value, StringBuilder out) {
+        if (!isIntegral(value) && !(value instanceof BigInteger)) {
+            // String.format rejects non-integral values instead of truncating them
+            out.append(String.format(Locale.ROOT, spec, value));
+            return;
+        }
+
+        if (value instanceof BigInteger integer) {
+            appendSign(integer.signum() < 0, out);
+            int digitsStart = out.length();
+            out.append(integer.abs());
+            group(out, digitsStart, out.length());
+            return;
+        }
+
+        long number = ((Number) value).longValue();
+        appendSign(number < 0, out);
+        int digitsStart = out.length();
+        if (number == Long.MIN_VALUE) {
+            out.append("9223372036854775808");
+        } else {
+            out.append(Math.abs(number));
+        }
+        group(out, digitsStart, out.length());
+    }
+
+    private void appendFixed(Object value, StringBuilder out) {
+        Number number = toNumber(value);
+        int scale = precision < 0 ? 6 : precision;
+
+        if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte) {
+            long integral = number.longValue();
+            appendSign(integral < 0, out);
+            int digitsStart = out.length();
+            if (integral == Long.MIN_VALUE) {
+                out.append("9223372036854775808");
+            } else {
+                out.append(Math.abs(integral));
+            }
+            group(out, digitsStart, out.length());
+            if (scale > 0) {
+                out.append('.');
+                out.append("0".repeat(scale));
+            }
+            return;
+        }
+
+        BigDecimal decimal;
+        boolean negative;
+        if (number instanceof BigDecimal big) {
+            decimal = big;
+            negative = big.signum() < 0;
+        } else if (number instanceof BigInteger big) {
+            decimal = new BigDecimal(big);
+            negative = big.signum() < 0;
+        } else {
+            double d = number.doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                if (!Double.isNaN(d)) {
+                    appendSign(d < 0, out);
+                }
+                out.append(Double.isNaN(d) ? "NaN" : "Infinity");
+                return;
+            }
+            // valueOf goes through Double.toString, matching how String.format rounds
+            decimal = BigDecimal.valueOf(d);
+            negative = Math.copySign(1.0, d) < 0;
+        }
+
+        String digits = decimal.abs().setScale(scale, RoundingMode.HALF_UP).toPlainString();
+        appendSign(negative, out);
+        int digitsStart = out.length();
+        out.append(digits);
+        int pointIndex = scale > 0 ? out.length() - scale - 1 : out.length();
+        group(out, digitsStart, pointIndex);
+    }
+
+    private void appendHex(Object value, StringBuilder out) {
+        // Negative values are written in two's complement of the operand's own width
+        String hex;
+        if (value instanceof Byte b) {
+            hex = Integer.toHexString(b & 0xff);
+        } else if (value instanceof Short s) {
+            hex = Integer.toHexString(s & 0xffff);
+        } else if (value instanceof Integer n) {
+            hex = Integer.toHexString(n);
+        } else if (value instanceof Long n) {
+            hex = Long.toHexString(n);
+        } else {
+            out.append(String.format(Locale.ROOT, spec, value));
+            return;
+        }
+        out.append(conversion == 'X' ? hex.toUpperCase(Locale.ROOT) : hex);
+    }
+
+    private static boolean isIntegral(Object value) {
+        return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+    }
+
+    private void appendString(Object value, StringBuilder out, int start) {
+        if (precision >= 0) {
+            String text = String.valueOf(value);
+            out.append(text, 0, Math.min(precision, text.length()));
+        } else {
+            out.append(value);
+        }
+
+        if (conversion == 'S') {
+            for (int i = start; i < out.length(); i++) {
+                out.setCharAt(i, Character.toUpperCase(out.charAt(i)));
+            }
+        }
+    }
+
+    private void appendSign(boolean negative, StringBuilder out) {
+        if (negative) {
+            out.append('-');
+        } else if (plusSign) {
+            out.append('+');
+        } else if (spaceSign) {
+            out.append(' ');
+        }
+    }
+
+    /**
+     * Insert grouping separators into the integer digits between from and to.
+     */
+    private void group(StringBuilder out, int from, int to) {
+        if (!grouping) {
+            return;
+        }
+        for (int i = to - 3; i > from; i -= 3) {
+            out.insert(i, ',');
+        }
+    }
+
+    private void pad(StringBuilder out, int start) {
+        int padding = width - (out.length() - start);
+        if (padding <= 0) {
+            return;
+        }
+
+        if (leftJustify) {
+            appendRepeated(out, ' ', padding);
+        } else if (zeroPad && conversion != 's' && conversion != 'S') {
+            // Zeros go between the sign and the digits
+            int insertAt = start;
+            if (insertAt < out.length() && "+- ".indexOf(out.charAt(insertAt)) >= 0) {
+                insertAt++;
+            }
+            out.insert(insertAt, "0".repeat(padding));
+        } else {
+            out.insert(start, " ".repeat(padding));
+        }
+    }
+
+    private void align(StringBuilder out, int start) {
+        int padding = width - (out.length() - start);
+        if (padding <= 0) {
+            return;
+        }
+
+        switch (alignment) {
+            case '<' -> appendRepeated(out, fill, padding);
+            case '>' -> out.insert(start, String.valueOf(fill).repeat(padding));
+            default -> {
+                int before = padding / 2;
+                out.insert(start, String.valueOf(fill).repeat(before));
+                appendRepeated(out, fill, padding - before);
+            }
+        }
+    }
+
+    private static void appendRepeated(StringBuilder out, char c, int count) {
+        for (int i = 0; i < count; i++) {
+            out.append(c);
+        }
+    }
+
+    private Number toNumber(Object value) {
+        if (value instanceof Number number) {
+            return number;
+        }
+        throw new IllegalArgumentException("Cannot format value as a number with '" + spec + "': " + value);
+    }
+
+    @Override
+    public String toString() {
+        return spec;
+    }
+}
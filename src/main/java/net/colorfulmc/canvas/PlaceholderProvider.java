@@ -0,0 +1,104 @@
+package net.colorfulmc.canvas;
+
+import java.time.Duration;
+
+/**
+ * Computes the values of a placeholder namespace on demand, e.g. {@code server.tps} or
+ * {@code top.kills[1]} for the {@code server} and {@code top} namespaces.
+ * <p>
+ * Providers are registered with a {@link PlaceholderRegistry}, which caches their values
+ * according to {@link #cachePolicy()}.
+ */
+@FunctionalInterface
+public interface PlaceholderProvider {
+    /**
+     * Compute a value.
+     *
+     * @param key The rest of the path after the namespace, e.g. {@code tps} or {@code kills[1]}
+     * @param context The context being rendered; empty when refreshing in the background
+     * @return The value, or null if the provider has none for the key
+     */
+    Object resolve(String key, Context context);
+
+    /**
+     * Get how the provider's values are cached. Defaults to computing each value once per render.
+     *
+     * @return The cache policy
+     */
+    default CachePolicy cachePolicy() {
+        return CachePolicy.perRender();
+    }
+
+    /**
+     * How long computed values are reused.
+     * <p>
+     * Values cached for a time to live or refreshed in the background are shared by every
+     * render, so those policies only suit values that do not depend on the render context.
+     */
+    final class CachePolicy {
+        private static final CachePolicy PER_RENDER = new CachePolicy(Kind.PER_RENDER, 0);
+
+        /**
+         * The kinds of cache policies.
+         */
+        public enum Kind {
+            PER_RENDER,
+            TTL,
+            REFRESH
+        }
+
+        private final Kind kind;
+        private final long nanos;
+
+        private CachePolicy(Kind kind, long nanos) {
+            this.kind = kind;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Compute each value at most once per render, i.e. per provider context.
+         */
+        public static CachePolicy perRender() {
+            return PER_RENDER;
+        }
+
+        /**
+         * Reuse each value for a fixed time after it was computed.
+         *
+         * @param ttl How long a value stays valid
+         */
+        public static CachePolicy ttl(Duration ttl) {
+            return new CachePolicy(Kind.TTL, positiveNanos(ttl));
+        }
+
+        /**
+         * Compute each value when it is first requested and then recompute it in the background
+         * at a fixed interval, so renders never wait for the provider after the first request.
+         * Keys that are not requested between two refreshes are dropped and computed again
+         * when they are next requested.
+         *
+         * @param interval The time between refreshes
+         */
+        public static CachePolicy refreshEvery(Duration interval) {
+            return new CachePolicy(Kind.REFRESH, positiveNanos(interval));
+        }
+
+        private static long positiveNanos(Duration duration) {
+            if (duration.isNegative() || duration.isZero()) {
+                throw new IllegalArgumentException("Duration must be positive: " + duration);
+            }
+            return duration.toNanos();
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * Get the time to live or refresh interval in nanoseconds, or 0 for per render caching.
+         */
+        public long getNanos() {
+            return nanos;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package net.colorfulmc.canvas;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Maps placeholder namespaces to {@link PlaceholderProvider}s and caches their values.
+ * <p>
+ * Wrap the context of a render with {@link #context(Context)} to make the namespaces visible:
+ * a path such as {@code server.tps} then resolves the {@code server} namespace to a scope, and
+ * {@link FieldExpression} hands the rest of the path, {@code tps}, to the provider's cache
+ * instead of walking it. Registration is copy-on-write, so lookups never lock.
+ * <p>
+ * A registered namespace shadows any value of the same name in the base context, and a path
+ * must continue past the namespace: evaluating or looking up {@code server} on its own throws.
+ * Each provider caches at most 1024 keys.
+ */
+public class PlaceholderRegistry implements AutoCloseable {
+    // Stands in for null values, which concurrent maps cannot hold
+    private static final Object NULL = new Object();
+    private static final Context EMPTY = new MapContext();
+    // Maximum number of keys cached per provider with a time to live or background refresh
+    private static final int MAX_CACHED_KEYS = 1024;
+
+    private final AtomicReference<Map<String, Binding>> bindings = new AtomicReference<>(Map.of());
+    private final ScheduledExecutorService scheduler;
+    private final LongSupplier clock;
+
+    /**
+     * Create a new PlaceholderRegistry without background refreshing.
+     * Providers with a {@link PlaceholderProvider.CachePolicy#refreshEvery refresh} policy cannot be registered.
+     */
+    public PlaceholderRegistry() {
+        this(null);
+    }
+
+    /**
+     * Create a new PlaceholderRegistry.
+     *
+     * @param scheduler The executor background refreshes run on. It is not shut down by {@link #close()}.
+     */
+    public PlaceholderRegistry(ScheduledExecutorService scheduler) {
+        this(scheduler, System::nanoTime);
+    }
+
+    PlaceholderRegistry(ScheduledExecutorService scheduler, LongSupplier clock) {
+        this.scheduler = scheduler;
+        this.clock = clock;
+    }
+
+    /**
+     * Register a provider, replacing any provider registered for the namespace.
+     *
+     * @param namespace The first path segment handled by the provider, e.g. {@code server}
+     * @param provider The provider
+     * @throws IllegalArgumentException if the namespace is not a plain name, or the provider
+     *                                  refreshes in the background and this registry has no scheduler
+     */
+    public void register(String namespace, PlaceholderProvider provider) {
+        if (namespace.isEmpty() || !namespace.chars().allMatch(Character::isJavaIdentifierPart)) {
+            throw new IllegalArgumentException("Invalid placeholder namespace: " + namespace);
+        }
+
+        PlaceholderProvider.CachePolicy policy = provider.cachePolicy();
+        if (policy.getKind() == PlaceholderProvider.CachePolicy.Kind.REFRESH && scheduler == null) {
+            throw new IllegalArgumentException("Provider for " + namespace + " refreshes in the background, "
+                    + "but the registry has no scheduler");
+        }
+
+        Binding binding = new Binding(provider, policy);
+        Map<String, Binding> current;
+        Map<String, Binding> updated;
+        do {
+            current = bindings.get();
+            updated = new HashMap<>(current);
+            updated.put(namespace, binding);
+        } while (!bindings.compareAndSet(current, Map.copyOf(updated)));
+
+        Binding replaced = current.get(namespace);
+        if (replaced != null) {
+            replaced.cancel();
+        }
+        if (policy.getKind() == PlaceholderProvider.CachePolicy.Kind.REFRESH) {
+            binding.schedule();
+        }
+    }
+
+    /**
+     * Remove the provider of a namespace.
+     *
+     * @param namespace The namespace
+     */
+    public void unregister(String namespace) {
+        Map<String, Binding> current;
+        Map<String, Binding> updated;
+        do {
+            current = bindings.get();
+            if (!current.containsKey(namespace)) {
+                return;
+            }
+            updated = new HashMap<>(current);
+            updated.remove(namespace);
+        } while (!bindings.compareAndSet(current, Map.copyOf(updated)));
+
+        current.get(namespace).cancel();
+    }
+
+    /**
+     * Create a context for one render that resolves the registered namespaces and falls back
+     * to the given context for everything else. Per render values are cached in the returned
+     * context, so use a new one for every render.
+     *
+     * @param base The context containing the render's own values
+     * @return The context to render with
+     */
+    public Context context(Context base) {
+        return new ProviderContext(base, bindings.get());
+    }
+
+    /**
+     * Run the background refresh of every provider now, on the calling thread.
+     */
+    void refreshNow() {
+        for (Binding binding : bindings.get().values()) {
+            if (binding.policy.getKind() == PlaceholderProvider.CachePolicy.Kind.REFRESH) {
+                binding.refresh();
+            }
+        }
+    }
+
+    /**
+     * Stop all background refreshes.
+     */
+    @Override
+    public void close() {
+        for (Binding binding : bindings.get().values()) {
+            binding.cancel();
+        }
+    }
+
+    /**
+     * A registered provider and its shared cache.
+     */
+    final class Binding {
+        private final PlaceholderProvider provider;
+        private final PlaceholderProvider.CachePolicy policy;
+        private final Map<String, Refreshed> values = new ConcurrentHashMap<>();
+        private final Map<String, Timed> timed = new ConcurrentHashMap<>();
+        private volatile ScheduledFuture<?> refresh;
+
+        Binding(PlaceholderProvider provider, PlaceholderProvider.CachePolicy policy) {
+            this.provider = provider;
+            this.policy = policy;
+        }
+
+        /**
+         * Get a value, computing it if the cache has none.
+         *
+         * @param key The rest of the path after the namespace
+         * @param context The context of the render
+         * @param renderValues The values cached for the current render
+         */
+        Object get(String key, Context context, Map<String, Object> renderValues) {
+            Object value;
+            switch (policy.getKind()) {
+                case TTL -> {
+                    long now = clock.getAsLong();
+                    Timed entry = timed.get(key);
+                    if (entry != null && now - entry.expires < 0) {
+                        value = entry.value;
+                    } else {
+                        value = mask(provider.resolve(key, context));
+                        if (entry == null && timed.size() >= MAX_CACHED_KEYS) {
+                            // Keep memory bounded for providers with many distinct keys
+                            timed.values().removeIf(expired -> now - expired.expires >= 0);
+                            if (timed.size() >= MAX_CACHED_KEYS) {
+                                timed.clear();
+                            }
+                        }
+                        timed.put(key, new Timed(value, now + policy.getNanos()));
+                    }
+                }
+                case REFRESH -> {
+                    Refreshed entry = values.get(key);
+                    if (entry == null) {
+                        // First request; from now on the key is refreshed in the background
+                        value = mask(provider.resolve(key, context));
+                        if (values.size() >= MAX_CACHED_KEYS) {
+                            // Keep memory bounded within one refresh interval as well
+                            values.values().removeIf(unread -> !unread.read);
+                            if (values.size() >= MAX_CACHED_KEYS) {
+                                values.clear();
+                            }
+                        }
+                        values.put(key, new Refreshed(value));
+                    } else {
+                        entry.read = true;
+                        value = entry.value;
+                    }
+                }
+                default -> {
+                    value = renderValues.get(key);
+                    if (value == null) {
+                        value = mask(provider.resolve(key, context));
+                        renderValues.put(key, value);
+                    }
+                }
+            }
+            return value == NULL ? null : value;
+        }
+
+        private void schedule() {
+            refresh = scheduler.scheduleAtFixedRate(this::refresh, policy.getNanos(), policy.getNanos(),
+                    TimeUnit.NANOSECONDS);
+        }
+
+        private void refresh() {
+            for (Map.Entry<String, Refreshed> entry : values.entrySet()) {
+                Refreshed refreshed = entry.getValue();
+                if (!refreshed.read) {
+                    // Not requested since the last refresh; computed again on its next request
+                    values.remove(entry.getKey(), refreshed);
+                    continue;
+                }
+
+                refreshed.read = false;
+                try {
+                    refreshed.value = mask(provider.resolve(entry.getKey(), EMPTY));
+                } catch (RuntimeException e) {
+                    // Keep serving the previous value; an exception would also cancel the schedule
+                }
+            }
+        }
+
+        private void cancel() {
+            ScheduledFuture<?> future = refresh;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        private Object mask(Object value) {
+            return value == null ? NULL : value;
+        }
+    }
+
+    /**
+     * A value refreshed in the background.
+     */
+    private static final class Refreshed {
+        volatile Object value;
+        // Whether the value was requested since the last refresh
+        volatile boolean read = true;
+
+        Refreshed(Object value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * A value cached until a point in time.
+     */
+    private static final class Timed {
+        final Object value;
+        final long expires;
+
+        Timed(Object value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+}
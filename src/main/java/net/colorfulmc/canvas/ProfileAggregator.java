@@ -0,0 +1,157 @@
+package net.colorfulmc.canvas;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates {@link ExplainNode} profiles over many evaluations, per rule and per node.
+ * <p>
+ * Recording is thread-safe and does not lock, so profiles can be collected from every
+ * evaluating thread on a staging server and inspected while evaluation continues.
+ */
+public final class ProfileAggregator {
+    private final Map<String, Stats> rules = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Stats>> nodes = new ConcurrentHashMap<>();
+
+    /**
+     * Record one explained evaluation of a rule.
+     *
+     * @param rule The name of the rule that was evaluated
+     * @param profile The explained evaluation
+     */
+    public void record(String rule, ExplainNode profile) {
+        rules.computeIfAbsent(rule, Stats::new).add(profile, profile.getNanos());
+
+        Map<String, Stats> ruleNodes = nodes.computeIfAbsent(rule, k -> new ConcurrentHashMap<>());
+        recordNodes(ruleNodes, profile);
+    }
+
+    private static void recordNodes(Map<String, Stats> ruleNodes, ExplainNode node) {
+        ruleNodes.computeIfAbsent(node.getLabel(), Stats::new).add(node, node.getSelfNanos());
+        for (ExplainNode child : node.getChildren()) {
+            recordNodes(ruleNodes, child);
+        }
+    }
+
+    /**
+     * Get the aggregated statistics of a rule.
+     *
+     * @param rule The name of the rule
+     * @return The statistics, or null if the rule was never recorded
+     */
+    public Stats getRule(String rule) {
+        return rules.get(rule);
+    }
+
+    /**
+     * Get the aggregated statistics of every node of a rule, keyed by node label.
+     * Node timings are self times, excluding children.
+     *
+     * @param rule The name of the rule
+     * @return The statistics of the rule's nodes, empty if the rule was never recorded
+     */
+    public Map<String, Stats> getNodes(String rule) {
+        Map<String, Stats> ruleNodes = nodes.get(rule);
+        return ruleNodes == null ? Map.of() : Map.copyOf(ruleNodes);
+    }
+
+    /**
+     * Get the rules with the highest total evaluation time, slowest first.
+     *
+     * @param limit The maximum number of rules to return
+     * @return The slowest rules
+     */
+    public List<Stats> worst(int limit) {
+        List<Stats> sorted = new ArrayList<>(rules.values());
+        sorted.sort(Comparator.comparingLong(Stats::getTotalNanos).reversed());
+        return sorted.subList(0, Math.min(limit, sorted.size()));
+    }
+
+    /**
+     * Discard everything recorded so far.
+     */
+    public void reset() {
+        rules.clear();
+        nodes.clear();
+    }
+
+    /**
+     * Aggregated statistics of a rule or node.
+     */
+    public static final class Stats {
+        private final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder allocatedBytes = new LongAdder();
+        private final LongAdder lookupHits = new LongAdder();
+        private final LongAdder lookupMisses = new LongAdder();
+
+        Stats(String name) {
+            this.name = name;
+        }
+
+        void add(ExplainNode node, long nanos) {
+            count.increment();
+            if (node.getError() != null) {
+                errors.increment();
+            }
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            if (node.getAllocatedBytes() > 0) {
+                allocatedBytes.add(node.getAllocatedBytes());
+            }
+            lookupHits.add(node.getLookupHits());
+            lookupMisses.add(node.getLookupMisses());
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        public long getAverageNanos() {
+            long n = getCount();
+            return n == 0 ? 0 : getTotalNanos() / n;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes.sum();
+        }
+
+        public long getLookupHits() {
+            return lookupHits.sum();
+        }
+
+        public long getLookupMisses() {
+            return lookupMisses.sum();
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + getCount() + " runs, avg " + getAverageNanos() + "ns, max " + getMaxNanos()
+                    + "ns, " + getAllocatedBytes() + "B, " + getErrors() + " errors";
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package net.colorfulmc.canvas;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Context for one render that exposes placeholder namespaces on top of a base context.
+ * Created by {@link PlaceholderRegistry#context(Context)}; confined to the rendering thread.
+ * <p>
+ * {@link #get(String)} resolves whole paths such as {@code server.tps}. The namespace on its
+ * own is not a value, so looking it up throws; {@link FieldExpression} reaches the scope of a
+ * namespace through {@link #find(Context, String)} instead.
+ */
+final class ProviderContext implements Context {
+    private final Context base;
+    private final Map<String, PlaceholderRegistry.Binding> bindings;
+    // Shared with derived contexts, so per render values are computed once per render
+    private final Map<String, ProviderScope> scopes;
+
+    ProviderContext(Context base, Map<String, PlaceholderRegistry.Binding> bindings) {
+        this(base, bindings, new HashMap<>());
+    }
+
+    private ProviderContext(Context base, Map<String, PlaceholderRegistry.Binding> bindings,
+                            Map<String, ProviderScope> scopes) {
+        this.base = base;
+        this.bindings = bindings;
+        this.scopes = scopes;
+    }
+
+    Context getBase() {
+        return base;
+    }
+
+    /**
+     * Find the scope of a namespace visible from a context, looking through the contexts that
+     * are layered on top of a provider context.
+     *
+     * @param context The context being evaluated against
+     * @param namespace The first segment of a path
+     * @return The scope, or null if the name is not a registered namespace
+     */
+    static ProviderScope find(Context context, String namespace) {
+        while (true) {
+            if (context instanceof ProviderContext providers) {
+                ProviderScope scope = providers.scope(namespace);
+                if (scope != null) {
+                    return scope;
+                }
+                context = providers.base;
+            } else if (context instanceof ScopedContext scoped) {
+                if (scoped.getName().equals(namespace)) {
+                    // Loop variables shadow namespaces
+                    return null;
+                }
+                context = scoped.getParent();
+            } else if (context instanceof GuardedContext guarded) {
+                context = guarded.getDelegate();
+            } else {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public Object get(String key) {
+        if (bindings.containsKey(key)) {
+            throw new IllegalArgumentException("Path ends at a placeholder namespace: " + key);
+        }
+
+        // Whole paths such as "server.tps" go straight to the provider
+        int dot = key.indexOf('.');
+        if (dot > 0) {
+            ProviderScope scope = scope(key.substring(0, dot));
+            if (scope != null) {
+                return scope.resolve(key.substring(dot + 1));
+            }
+        }
+        return base.get(key);
+    }
+
+    private ProviderScope scope(String namespace) {
+        ProviderScope scope = scopes.get(namespace);
+        if (scope == null) {
+            PlaceholderRegistry.Binding binding = bindings.get(namespace);
+            if (binding == null) {
+                return null;
+            }
+            scope = new ProviderScope(binding, this);
+            scopes.put(namespace, scope);
+        }
+        return scope;
+    }
+
+    @Override
+    public Context with(String key, Object value) {
+        return new ProviderContext(base.with(key, value), bindings, scopes);
+    }
+}
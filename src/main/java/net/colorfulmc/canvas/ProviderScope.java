@@ -0,0 +1,29 @@
+package net.colorfulmc.canvas;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A placeholder namespace of a {@link ProviderContext}, found by {@link FieldExpression} for the
+ * first segment of a path. The rest of the path is not walked; the namespace's provider resolves it.
+ */
+final class ProviderScope {
+    private final PlaceholderRegistry.Binding binding;
+    private final Context context;
+    private final Map<String, Object> renderValues = new HashMap<>();
+
+    ProviderScope(PlaceholderRegistry.Binding binding, Context context) {
+        this.binding = binding;
+        this.context = context;
+    }
+
+    /**
+     * Resolve the rest of a path through the provider's cache.
+     *
+     * @param key The path after the namespace, e.g. {@code tps}
+     * @return The value, or null if the provider has none
+     */
+    Object resolve(String key) {
+        return binding.get(key, context, renderValues);
+    }
+}
@@ -0,0 +1,267 @@
+package net.colorfulmc.canvas;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Queue of deferred template renders that are worked off within a time budget per tick.
+ * <p>
+ * Renders run in priority order, then earliest deadline first. To keep sustained high-priority
+ * load from starving low-priority work indefinitely, the render that is most overdue may
+ * jump the queue, but only once every few renders, so overdue work never holds up
+ * higher-priority work for more than one render at a time. Each call to
+ * {@link #runTick(long)} renders queued work until its budget is spent and leaves the rest
+ * for the next tick, so a burst of submissions delays low-priority output instead of
+ * stretching the tick. Submitting a template and context that are already queued replaces the
+ * pending request, keeping the higher priority, the earlier deadline and the latest callback.
+ * <p>
+ * Work can be submitted from any thread. Ticks are expected to run on a single thread, which
+ * is also the thread callbacks are invoked on.
+ */
+public class RenderScheduler {
+    // Deadlines are nanoTime values, which may overflow, so only their difference is meaningful
+    private static final Comparator<Job> DEADLINE = (a, b) -> Long.signum(a.deadline - b.deadline);
+    private static final Comparator<Job> BY_PRIORITY = Comparator
+            .comparingInt((Job job) -> job.priority).reversed()
+            .thenComparing(DEADLINE)
+            .thenComparingLong(job -> job.sequence);
+    private static final Comparator<Job> BY_DEADLINE = DEADLINE.thenComparing(BY_PRIORITY);
+    // At most one in this many renders is an overdue render jumping the queue
+    private static final int OVERDUE_INTERVAL = 4;
+
+    // Both hold every pending job; sorted sets so replaced jobs can be removed in log time
+    private final TreeSet<Job> byPriority = new TreeSet<>(BY_PRIORITY);
+    private final TreeSet<Job> byDeadline = new TreeSet<>(BY_DEADLINE);
+    private final Map<Key, Job> pending = new HashMap<>();
+    private final Consumer<? super RuntimeException> errorHandler;
+    private final LongSupplier clock;
+    private long sequence;
+    // Renders since an overdue render last jumped the queue
+    private int sinceOverdue = OVERDUE_INTERVAL;
+
+    private long rendered;
+    private long coalesced;
+    private long deadlineMisses;
+    private long failed;
+
+    /**
+     * Create a new RenderScheduler that counts failed renders and otherwise ignores them.
+     */
+    public RenderScheduler() {
+        this(e -> { });
+    }
+
+    /**
+     * Create a new RenderScheduler.
+     *
+     * @param errorHandler Called on the ticking thread when a render or its callback throws
+     */
+    public RenderScheduler(Consumer<? super RuntimeException> errorHandler) {
+        this(errorHandler, System::nanoTime);
+    }
+
+    RenderScheduler(Consumer<? super RuntimeException> errorHandler, LongSupplier clock) {
+        this.errorHandler = errorHandler;
+        this.clock = clock;
+    }
+
+    /**
+     * Queue a template to be rendered on a later tick.
+     *
+     * @param template The template to render
+     * @param context The context containing values to use
+     * @param priority The priority, higher renders first
+     * @param maxDelay How long the render may be deferred before it counts as a deadline miss
+     * @param callback Receives the rendered string
+     * @return true if the request was merged into one already queued
+     */
+    public boolean submit(Template template, Context context, int priority, Duration maxDelay,
+                          Consumer<? super String> callback) {
+        return submit(template.getCompiled(), context, priority, maxDelay, callback);
+    }
+
+    /**
+     * Queue a compiled template to be rendered on a later tick.
+     *
+     * @param template The template to render
+     * @param context The context containing values to use
+     * @param priority The priority, higher renders first
+     * @param maxDelay How long the render may be deferred before it counts as a deadline miss
+     * @param callback Receives the rendered string
+     * @return true if the request was merged into one already queued
+     */
+    public boolean submit(CompiledTemplate template, Context context, int priority, Duration maxDelay,
+                          Consumer<? super String> callback) {
+        long deadline = clock.getAsLong() + maxDelay.toNanos();
+        Key key = new Key(template, context);
+
+        synchronized (this) {
+            Job existing = pending.get(key);
+            if (existing != null) {
+                byPriority.remove(existing);
+                byDeadline.remove(existing);
+                priority = Math.max(priority, existing.priority);
+                deadline = Math.min(deadline, existing.deadline);
+                coalesced++;
+            }
+
+            Job job = new Job(key, priority, deadline, sequence++, callback);
+            pending.put(key, job);
+            byPriority.add(job);
+            byDeadline.add(job);
+            return existing != null;
+        }
+    }
+
+    /**
+     * Render queued templates until the budget is spent. At least one render runs per tick,
+     * so the queue drains even when a single render takes longer than the budget.
+     *
+     * @param budgetNanos The time to spend rendering, in nanoseconds
+     * @return The number of templates rendered
+     */
+    public int runTick(long budgetNanos) {
+        long start = clock.getAsLong();
+        long now = start;
+        int count = 0;
+
+        do {
+            Job job = poll(now);
+            if (job == null) {
+                break;
+            }
+
+            try {
+                String output = job.key.template.render(job.key.context);
+                job.callback.accept(output);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    failed++;
+                }
+                errorHandler.accept(e);
+            }
+
+            now = clock.getAsLong();
+            synchronized (this) {
+                rendered++;
+                if (now - job.deadline > 0) {
+                    deadlineMisses++;
+                }
+            }
+            count++;
+        } while (now - start < budgetNanos);
+
+        return count;
+    }
+
+    private synchronized Job poll(long now) {
+        if (byDeadline.isEmpty()) {
+            return null;
+        }
+
+        Job job = byPriority.first();
+        Job overdue = byDeadline.first();
+        if (overdue != job && now - overdue.deadline > 0 && sinceOverdue >= OVERDUE_INTERVAL - 1) {
+            job = overdue;
+            sinceOverdue = 0;
+        } else if (sinceOverdue < OVERDUE_INTERVAL) {
+            sinceOverdue++;
+        }
+        byPriority.remove(job);
+        byDeadline.remove(job);
+        pending.remove(job.key);
+        return job;
+    }
+
+    /**
+     * Get the number of renders waiting to run.
+     *
+     * @return The number of queued renders
+     */
+    public synchronized int getQueueDepth() {
+        return pending.size();
+    }
+
+    /**
+     * Get the number of renders run so far, including failed ones.
+     *
+     * @return The number of renders run
+     */
+    public synchronized long getRendered() {
+        return rendered;
+    }
+
+    /**
+     * Get the number of submissions merged into an already queued request.
+     *
+     * @return The number of merged submissions
+     */
+    public synchronized long getCoalesced() {
+        return coalesced;
+    }
+
+    /**
+     * Get the number of renders that completed after their deadline.
+     *
+     * @return The number of deadline misses
+     */
+    public synchronized long getDeadlineMisses() {
+        return deadlineMisses;
+    }
+
+    /**
+     * Get the number of renders whose template or callback threw.
+     *
+     * @return The number of failed renders
+     */
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Identity of a render request: the same template against the same context object.
+     */
+    private static final class Key {
+        final CompiledTemplate template;
+        final Context context;
+
+        Key(CompiledTemplate template, Context context) {
+            this.template = template;
+            this.context = context;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key other && template == other.template && context == other.context;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(template) + System.identityHashCode(context);
+        }
+    }
+
+    /**
+     * A queued render.
+     */
+    private static final class Job {
+        final Key key;
+        final int priority;
+        final long deadline;
+        final long sequence;
+        final Consumer<? super String> callback;
+
+        Job(Key key, int priority, long deadline, long sequence, Consumer<? super String> callback) {
+            this.key = key;
+            this.priority = priority;
+            this.deadline = deadline;
+            this.sequence = sequence;
+            this.callback = callback;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package net.colorfulmc.canvas;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Flyweight Context over one row of a {@link RowTable} at a time.
+ * <p>
+ * A cursor reads fields in place from the table's buffer, so moving it to another row does
+ * not allocate. Values returned by {@link #get(String)} are boxed; use {@link #getDouble(String)}
+ * or {@link #getLong(String)} to read numbers without boxing. A cursor is not thread-safe.
+ */
+public class RowCursor implements Context {
+    private final RowTable table;
+    private final int rowSize;
+    private int row;
+    private int base;
+
+    RowCursor(RowTable table) {
+        this.table = table;
+        this.rowSize = table.getSchema().getRowSize();
+        this.row = -1;
+        this.base = -rowSize;
+    }
+
+    /**
+     * Move the cursor to a row.
+     *
+     * @param row The row index
+     * @return This cursor
+     * @throws IndexOutOfBoundsException if the row does not exist
+     */
+    public RowCursor moveTo(int row) {
+        if (row < 0 || row >= table.rowCount()) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of bounds for " + table.rowCount() + " rows");
+        }
+        this.row = row;
+        this.base = row * rowSize;
+        return this;
+    }
+
+    /**
+     * Move the cursor to the next row, if there is one.
+     * A new cursor starts before the first row, so this can drive a {@code while} loop.
+     *
+     * @return true if the cursor moved
+     */
+    public boolean next() {
+        if (row + 1 >= table.rowCount()) {
+            return false;
+        }
+        moveTo(row + 1);
+        return true;
+    }
+
+    /**
+     * Get the index of the current row.
+     *
+     * @return The row index, or -1 before the first call to {@link #next()}
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * Read a numeric field of the current row without boxing.
+     *
+     * @param name The field name
+     * @return The field value as a double
+     * @throws IllegalArgumentException if the field does not exist
+     */
+    public double getDouble(String name) {
+        RowSchema.Field field = field(name);
+        return table.readDouble(field, base + field.offset);
+    }
+
+    /**
+     * Read a numeric field of the current row without boxing.
+     *
+     * @param name The field name
+     * @return The field value as a long, truncated if it is a floating point field
+     * @throws IllegalArgumentException if the field does not exist
+     */
+    public long getLong(String name) {
+        RowSchema.Field field = field(name);
+        return table.readLong(field, base + field.offset);
+    }
+
+    private RowSchema.Field field(String name) {
+        RowSchema.Field field = table.getSchema().getField(name);
+        if (field == null) {
+            throw new IllegalArgumentException("Unknown field: " + name);
+        }
+        return field;
+    }
+
+    @Override
+    public Object get(String key) {
+        RowSchema.Field field = table.getSchema().getField(key);
+        return field == null ? null : table.readValue(field, base + field.offset);
+    }
+
+    @Override
+    public Context with(String key, Object value) {
+        // Snapshot the current row, since the cursor itself keeps moving
+        Map<String, Object> data = new HashMap<>();
+        for (RowSchema.Field field : table.getSchema().getFields()) {
+            data.put(field.name, table.readValue(field, base + field.offset));
+        }
+        data.put(key, value);
+        return new MapContext(data);
+    }
+}
@@ -0,0 +1,143 @@
+package net.colorfulmc.canvas;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable layout of fixed-size binary rows: each field has a name, a primitive type and a
+ * byte offset within the row. Used by {@link RowTable} to read rows in place.
+ */
+public class RowSchema {
+    private final Map<String, Field> fields;
+    private final int rowSize;
+
+    /**
+     * Create an empty RowSchema.
+     */
+    public RowSchema() {
+        this(Collections.emptyMap(), 0);
+    }
+
+    private RowSchema(Map<String, Field> fields, int rowSize) {
+        this.fields = Collections.unmodifiableMap(fields);
+        this.rowSize = rowSize;
+    }
+
+    /**
+     * Create a new schema with an additional field placed directly after the last field.
+     *
+     * @param name The field name
+     * @param type The field type
+     * @return A new schema with the additional field
+     */
+    public RowSchema with(String name, Type type) {
+        int end = 0;
+        for (Field field : fields.values()) {
+            end = Math.max(end, field.offset + field.type.size);
+        }
+        return with(name, type, end);
+    }
+
+    /**
+     * Create a new schema with an additional field at an explicit offset.
+     *
+     * @param name The field name
+     * @param type The field type
+     * @param offset The byte offset of the field within a row
+     * @return A new schema with the additional field
+     * @throws IllegalArgumentException if the field already exists or the offset is negative
+     */
+    public RowSchema with(String name, Type type, int offset) {
+        if (fields.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate field: " + name);
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException("Negative offset for field " + name + ": " + offset);
+        }
+
+        Map<String, Field> newFields = new LinkedHashMap<>(fields);
+        newFields.put(name, new Field(name, type, offset));
+        return new RowSchema(newFields, Math.max(rowSize, offset + type.size));
+    }
+
+    /**
+     * Create a new schema with a larger row size, e.g. to account for padding between rows.
+     *
+     * @param rowSize The size of a row in bytes
+     * @return A new schema with the given row size
+     * @throws IllegalArgumentException if a field would not fit into the row
+     */
+    public RowSchema withRowSize(int rowSize) {
+        for (Field field : fields.values()) {
+            if (field.offset + field.type.size > rowSize) {
+                throw new IllegalArgumentException("Field " + field.name + " does not fit into " + rowSize + " bytes");
+            }
+        }
+        return new RowSchema(new LinkedHashMap<>(fields), rowSize);
+    }
+
+    /**
+     * Get the size of a row in bytes.
+     *
+     * @return The row size
+     */
+    public int getRowSize() {
+        return rowSize;
+    }
+
+    /**
+     * Get the names of the fields, in declaration order.
+     *
+     * @return The field names
+     */
+    public Iterable<String> getFieldNames() {
+        return fields.keySet();
+    }
+
+    Field getField(String name) {
+        return fields.get(name);
+    }
+
+    Iterable<Field> getFields() {
+        return fields.values();
+    }
+
+    /**
+     * Primitive field types and their sizes in bytes.
+     */
+    public enum Type {
+        BYTE(1),
+        BOOLEAN(1),
+        SHORT(2),
+        INT(4),
+        FLOAT(4),
+        LONG(8),
+        DOUBLE(8);
+
+        private final int size;
+
+        Type(int size) {
+            this.size = size;
+        }
+
+        public int getSize() {
+            return size;
+        }
+    }
+
+    /**
+     * A named field at a fixed offset.
+     */
+    static final class Field {
+        final String name;
+        final Type type;
+        final int offset;
+
+        Field(String name, Type type, int offset) {
+            this.name = name;
+            this.type = type;
+            this.offset = offset;
+        }
+    }
+}
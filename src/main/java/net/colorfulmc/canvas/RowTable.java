@@ -0,0 +1,206 @@
+package net.colorfulmc.canvas;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * ColumnSource over fixed-size binary rows stored in a {@link ByteBuffer}, typically a direct
+ * or memory-mapped buffer outside the heap.
+ * <p>
+ * Fields are read in place through a {@link RowSchema}. Numeric columns are loaded for
+ * {@link ColumnarPredicate} straight from the buffer without boxing, and a {@link RowCursor}
+ * exposes rows as a Context without copying them. The buffer's byte order is used for all reads.
+ */
+public class RowTable implements ColumnSource {
+    private final ByteBuffer buffer;
+    private final RowSchema schema;
+    private final int rowCount;
+
+    /**
+     * Create a new RowTable over the remaining bytes of a buffer.
+     * The buffer is not copied, so its contents should not change while the table is in use.
+     *
+     * @param buffer The buffer holding the rows
+     * @param schema The layout of a row
+     * @throws IllegalArgumentException if the schema is empty
+     */
+    public RowTable(ByteBuffer buffer, RowSchema schema) {
+        if (schema.getRowSize() <= 0) {
+            throw new IllegalArgumentException("Row schema has no fields");
+        }
+        this.buffer = buffer.slice().order(buffer.order());
+        this.schema = schema;
+        this.rowCount = this.buffer.remaining() / schema.getRowSize();
+    }
+
+    /**
+     * Memory-map a file of rows.
+     *
+     * @param file The file to map
+     * @param schema The layout of a row
+     * @param order The byte order the file was written in
+     * @return The table
+     * @throws IOException if the file cannot be mapped
+     */
+    public static RowTable map(Path file, RowSchema schema, ByteOrder order) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new RowTable(mapped.order(order), schema);
+        }
+    }
+
+    /**
+     * Get the layout of a row.
+     *
+     * @return The schema
+     */
+    public RowSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Create a cursor positioned before the first row.
+     *
+     * @return A new cursor
+     */
+    public RowCursor cursor() {
+        return new RowCursor(this);
+    }
+
+    @Override
+    public int rowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public boolean hasNumericColumn(String name) {
+        RowSchema.Field field = schema.getField(name);
+        return field != null && field.type != RowSchema.Type.BOOLEAN;
+    }
+
+    @Override
+    public void loadDoubles(String name, int fromRow, double[] dest, int length) {
+        RowSchema.Field field = schema.getField(name);
+        if (field == null || field.type == RowSchema.Type.BOOLEAN) {
+            throw new IllegalArgumentException("Not a numeric column: " + name);
+        }
+
+        int rowSize = schema.getRowSize();
+        int position = fromRow * rowSize + field.offset;
+        switch (field.type) {
+            case DOUBLE -> {
+                for (int i = 0; i < length; i++, position += rowSize) {
+                    dest[i] = buffer.getDouble(position);
+                }
+            }
+            case LONG -> {
+                for (int i = 0; i < length; i++, position += rowSize) {
+                    dest[i] = buffer.getLong(position);
+                }
+            }
+            case INT -> {
+                for (int i = 0; i < length; i++, position += rowSize) {
+                    dest[i] = buffer.getInt(position);
+                }
+            }
+            default -> {
+                for (int i = 0; i < length; i++, position += rowSize) {
+                    dest[i] = readDouble(field, position);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Class<?> getNumericType(String name) {
+        RowSchema.Field field = schema.getField(name);
+        if (field == null) {
+            return null;
+        }
+        // Float operands act as longs in some math and as doubles elsewhere, so they stay row by row
+        return switch (field.type) {
+            case BYTE -> Byte.class;
+            case SHORT -> Short.class;
+            case INT -> Integer.class;
+            case LONG -> Long.class;
+            case DOUBLE -> Double.class;
+            case BOOLEAN, FLOAT -> null;
+        };
+    }
+
+    @Override
+    public void loadLongs(String name, int fromRow, long[] dest, int length) {
+        RowSchema.Field field = schema.getField(name);
+        if (field == null || field.type == RowSchema.Type.BOOLEAN) {
+            throw new IllegalArgumentException("Not a numeric column: " + name);
+        }
+
+        int rowSize = schema.getRowSize();
+        int position = fromRow * rowSize + field.offset;
+        switch (field.type) {
+            case LONG -> {
+                for (int i = 0; i < length; i++, position += rowSize) {
+                    dest[i] = buffer.getLong(position);
+                }
+            }
+            case INT -> {
+                for (int i = 0; i < length; i++, position += rowSize) {
+                    dest[i] = buffer.getInt(position);
+                }
+            }
+            default -> {
+                for (int i = 0; i < length; i++, position += rowSize) {
+                    dest[i] = readLong(field, position);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Context row(int row) {
+        RowCursor cursor = cursor();
+        cursor.moveTo(row);
+        return cursor;
+    }
+
+    double readDouble(RowSchema.Field field, int position) {
+        return switch (field.type) {
+            case BYTE -> buffer.get(position);
+            case BOOLEAN -> buffer.get(position) != 0 ? 1 : 0;
+            case SHORT -> buffer.getShort(position);
+            case INT -> buffer.getInt(position);
+            case FLOAT -> buffer.getFloat(position);
+            case LONG -> buffer.getLong(position);
+            case DOUBLE -> buffer.getDouble(position);
+        };
+    }
+
+    long readLong(RowSchema.Field field, int position) {
+        return switch (field.type) {
+            case BYTE -> buffer.get(position);
+            case BOOLEAN -> buffer.get(position) != 0 ? 1 : 0;
+            case SHORT -> buffer.getShort(position);
+            case INT -> buffer.getInt(position);
+            case FLOAT -> (long) buffer.getFloat(position);
+            case LONG -> buffer.getLong(position);
+            case DOUBLE -> (long) buffer.getDouble(position);
+        };
+    }
+
+    Object readValue(RowSchema.Field field, int position) {
+        return switch (field.type) {
+            case BYTE -> buffer.get(position);
+            case BOOLEAN -> buffer.get(position) != 0;
+            case SHORT -> buffer.getShort(position);
+            case INT -> buffer.getInt(position);
+            case FLOAT -> buffer.getFloat(position);
+            case LONG -> buffer.getLong(position);
+            case DOUBLE -> buffer.getDouble(position);
+        };
+    }
+}
@@ -0,0 +1,261 @@
+package net.colorfulmc.canvas;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A set of named, pre-parsed expressions and templates cached in a binary pack file.
+ * <p>
+ * The pack file stores the {@link ExpressionCodec} encoding of every entry together with a
+ * SHA-256 hash of all source texts. When the sources are unchanged since the pack was written,
+ * loading memory-maps the file and rebuilds the trees without running the parser. Otherwise
+ * the sources are parsed and the pack file is rewritten. The pack file is only a cache: one
+ * that cannot be read is rebuilt, and one that cannot be written is skipped.
+ * <p>
+ * Pack layout: magic {@code CNVP}, format version, source hash, then the expression,
+ * value expression and template sections, each a count followed by name/tree pairs.
+ */
+public final class RulePack {
+    private static final int MAGIC = 0x434E5650; // "CNVP"
+    private static final int HASH_LENGTH = 32;
+    // Hashed with the sources and bumped whenever parsing the same source yields a different tree,
+    // so packs written by an older parser are rebuilt even when the encoding is unchanged
+    private static final int PARSER_VERSION = 1;
+
+    private final Map<String, Expression> expressions;
+    private final Map<String, ValueExpression> values;
+    private final Map<String, CompiledTemplate> templates;
+    private final boolean warm;
+
+    private RulePack(Map<String, Expression> expressions, Map<String, ValueExpression> values,
+                     Map<String, CompiledTemplate> templates, boolean warm) {
+        this.expressions = Collections.unmodifiableMap(expressions);
+        this.values = Collections.unmodifiableMap(values);
+        this.templates = Collections.unmodifiableMap(templates);
+        this.warm = warm;
+    }
+
+    /**
+     * Load a rule pack, reusing the pack file when its sources are unchanged.
+     *
+     * @param file The pack file, which does not have to exist yet
+     * @param expressions Boolean expression sources by name, e.g. {@code "{elo >= 1500}"}
+     * @param values Value expression sources by name, e.g. {@code "kills / deaths"}
+     * @param templates Template sources by name
+     * @return The loaded rule pack
+     * @throws IllegalArgumentException if a source fails to parse
+     */
+    public static RulePack load(Path file, Map<String, String> expressions, Map<String, String> values,
+                                Map<String, String> templates) {
+        byte[] hash = hashSources(expressions, values, templates);
+
+        RulePack pack = read(file, hash);
+        if (pack != null) {
+            return pack;
+        }
+
+        pack = parse(expressions, values, templates);
+        try {
+            write(file, hash, pack);
+        } catch (IOException e) {
+            // The sources parsed, so a pack that can't be cached is still usable
+        }
+        return pack;
+    }
+
+    private static RulePack parse(Map<String, String> expressionSources, Map<String, String> valueSources,
+                                  Map<String, String> templateSources) {
+        Map<String, Expression> expressions = new HashMap<>();
+        expressionSources.forEach((name, source) -> expressions.put(name, ExpressionParser.parse(source)));
+
+        Map<String, ValueExpression> values = new HashMap<>();
+        valueSources.forEach((name, source) -> values.put(name, ExpressionParser.parseValueExpression(source)));
+
+        Map<String, CompiledTemplate> templates = new HashMap<>();
+        templateSources.forEach((name, source) -> templates.put(name, CompiledTemplate.compile(source)));
+
+        return new RulePack(expressions, values, templates, false);
+    }
+
+    private static RulePack read(Path file, byte[] hash) {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            // Missing or unreadable, parse the sources instead
+            return null;
+        }
+
+        try {
+            if (buffer.remaining() < 8 + HASH_LENGTH || buffer.getInt() != MAGIC
+                    || buffer.getInt() != ExpressionCodec.FORMAT_VERSION) {
+                return null;
+            }
+
+            byte[] storedHash = new byte[HASH_LENGTH];
+            buffer.get(storedHash);
+            if (!Arrays.equals(hash, storedHash)) {
+                return null;
+            }
+
+            Map<String, Expression> expressions = new HashMap<>();
+            for (int i = ExpressionCodec.readVarInt(buffer); i > 0; i--) {
+                expressions.put(ExpressionCodec.readString(buffer), ExpressionCodec.readExpression(buffer));
+            }
+
+            Map<String, ValueExpression> values = new HashMap<>();
+            for (int i = ExpressionCodec.readVarInt(buffer); i > 0; i--) {
+                values.put(ExpressionCodec.readString(buffer), ExpressionCodec.readValue(buffer));
+            }
+
+            Map<String, CompiledTemplate> templates = new HashMap<>();
+            for (int i = ExpressionCodec.readVarInt(buffer); i > 0; i--) {
+                templates.put(ExpressionCodec.readString(buffer), ExpressionCodec.readTemplate(buffer));
+            }
+
+            return new RulePack(expressions, values, templates, true);
+        } catch (RuntimeException e) {
+            // Corrupt or truncated pack, rebuild it from the sources
+            return null;
+        }
+    }
+
+    private static void write(Path file, byte[] hash, RulePack pack) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(ExpressionCodec.FORMAT_VERSION);
+            out.write(hash);
+
+            ExpressionCodec.writeVarInt(pack.expressions.size(), out);
+            for (Map.Entry<String, Expression> entry : pack.expressions.entrySet()) {
+                ExpressionCodec.writeString(entry.getKey(), out);
+                ExpressionCodec.writeExpression(entry.getValue(), out);
+            }
+
+            ExpressionCodec.writeVarInt(pack.values.size(), out);
+            for (Map.Entry<String, ValueExpression> entry : pack.values.entrySet()) {
+                ExpressionCodec.writeString(entry.getKey(), out);
+                ExpressionCodec.writeValue(entry.getValue(), out);
+            }
+
+            ExpressionCodec.writeVarInt(pack.templates.size(), out);
+            for (Map.Entry<String, CompiledTemplate> entry : pack.templates.entrySet()) {
+                ExpressionCodec.writeString(entry.getKey(), out);
+                ExpressionCodec.writeTemplate(entry.getValue(), out);
+            }
+        }
+
+        // Write to a sibling file first so a crash never leaves a half-written pack behind
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, bytes.toByteArray());
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static byte[] hashSources(Map<String, String> expressions, Map<String, String> values,
+                                      Map<String, String> templates) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(4);
+        digest.update(header.putInt(PARSER_VERSION).array());
+        for (Map<String, String> sources : Arrays.asList(expressions, values, templates)) {
+            // Sort so the hash does not depend on map iteration order
+            for (Map.Entry<String, String> entry : new TreeMap<>(sources).entrySet()) {
+                for (String part : new String[] {entry.getKey(), entry.getValue()}) {
+                    byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+                    digest.update(header.clear().putInt(bytes.length).array());
+                    digest.update(bytes);
+                }
+            }
+            digest.update(header.clear().putInt(-1).array());
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Check whether this pack was loaded from the pack file without parsing.
+     *
+     * @return true if the pack file was up to date
+     */
+    public boolean isWarm() {
+        return warm;
+    }
+
+    /**
+     * Get a boolean expression by name.
+     *
+     * @param name The expression name
+     * @return The expression, or null if not found
+     */
+    public Expression getExpression(String name) {
+        return expressions.get(name);
+    }
+
+    /**
+     * Get a value expression by name.
+     *
+     * @param name The value expression name
+     * @return The value expression, or null if not found
+     */
+    public ValueExpression getValue(String name) {
+        return values.get(name);
+    }
+
+    /**
+     * Get a compiled template by name.
+     *
+     * @param name The template name
+     * @return The template, or null if not found
+     */
+    public CompiledTemplate getTemplate(String name) {
+        return templates.get(name);
+    }
+
+    /**
+     * Get all boolean expressions in this pack.
+     */
+    public Map<String, Expression> getExpressions() {
+        return expressions;
+    }
+
+    /**
+     * Get all value expressions in this pack.
+     */
+    public Map<String, ValueExpression> getValues() {
+        return values;
+    }
+
+    /**
+     * Get all compiled templates in this pack.
+     */
+    public Map<String, CompiledTemplate> getTemplates() {
+        return templates;
+    }
+}
@@ -0,0 +1,309 @@
+package net.colorfulmc.canvas;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Versioned, hot-reloadable registry of named templates, expressions, value expressions and
+ * template processors.
+ * <p>
+ * All contents live in an immutable {@link Snapshot} published through an atomic reference.
+ * Reads never lock or wait: they grab the current snapshot and work on it, so a render that
+ * started before a reload finishes on the version it started with. Reloads compile the new
+ * contents first and only publish once everything compiled, so a failing reload leaves the
+ * previous version in place. Reloads take effect in the order they were started: a reload that
+ * finishes after a later one has been published is discarded.
+ */
+public final class RuleRegistry {
+    private final AtomicReference<Snapshot> current = new AtomicReference<>(
+            new Snapshot(0, 0, Map.of(), Map.of(), Map.of(), Map.of()));
+    // Numbers reloads in the order they were started
+    private final AtomicLong generations = new AtomicLong();
+
+    /**
+     * Get the currently published snapshot.
+     * Hold on to the returned snapshot to perform several lookups against a consistent version.
+     *
+     * @return The current snapshot
+     */
+    public Snapshot snapshot() {
+        return current.get();
+    }
+
+    /**
+     * Get the version of the currently published snapshot.
+     *
+     * @return The current version, starting at 0 and incremented on every publish
+     */
+    public long version() {
+        return current.get().version();
+    }
+
+    /**
+     * Get a template from the current snapshot.
+     *
+     * @param name The template name
+     * @return The template, or null if not found
+     */
+    public Template getTemplate(String name) {
+        return current.get().getTemplate(name);
+    }
+
+    /**
+     * Get an expression from the current snapshot.
+     *
+     * @param name The expression name
+     * @return The expression, or null if not found
+     */
+    public Expression getExpression(String name) {
+        return current.get().getExpression(name);
+    }
+
+    /**
+     * Get a value expression from the current snapshot.
+     *
+     * @param name The value expression name
+     * @return The value expression, or null if not found
+     */
+    public ValueExpression getValue(String name) {
+        return current.get().getValue(name);
+    }
+
+    /**
+     * Render a named template from the current snapshot as a string.
+     *
+     * @param name The template name
+     * @param context The context containing values to use
+     * @return The rendered string
+     * @throws IllegalArgumentException if no template with that name exists
+     */
+    public String render(String name, Context context) {
+        return current.get().render(name, String.class, context);
+    }
+
+    /**
+     * Evaluate a named expression from the current snapshot.
+     *
+     * @param name The expression name
+     * @param context The context to evaluate against
+     * @return The result of the expression
+     * @throws IllegalArgumentException if no expression with that name exists
+     */
+    public boolean evaluate(String name, Context context) {
+        return current.get().evaluate(name, context);
+    }
+
+    /**
+     * Compile new templates and expressions on the calling thread and publish them atomically,
+     * replacing all previously registered templates, expressions and value expressions.
+     * Processors registered on this registry are kept.
+     *
+     * @param templates Template sources by name
+     * @param expressions Expression sources by name, e.g. {@code "{elo >= 1500}"}
+     * @return The newly published snapshot
+     * @throws IllegalArgumentException if any source fails to compile, in which case nothing is published
+     */
+    public Snapshot reload(Map<String, String> templates, Map<String, String> expressions) {
+        return reload(generations.incrementAndGet(), templates, expressions);
+    }
+
+    private Snapshot reload(long generation, Map<String, String> templates, Map<String, String> expressions) {
+        Map<String, Template> compiledTemplates = new HashMap<>();
+        // Compile eagerly, so invalid templates fail the reload
+        templates.forEach((name, source) ->
+                compiledTemplates.put(name, new Template(CompiledTemplate.compile(source))));
+
+        Map<String, Expression> compiledExpressions = new HashMap<>();
+        expressions.forEach((name, source) -> compiledExpressions.put(name, ExpressionParser.parse(source)));
+
+        return publish(generation, compiledTemplates, compiledExpressions, Map.of());
+    }
+
+    /**
+     * Compile new templates and expressions on an executor and publish them atomically once done.
+     * If a reload started later has been published by then, this one is discarded.
+     *
+     * @param templates Template sources by name
+     * @param expressions Expression sources by name
+     * @param executor The executor to compile on
+     * @return A future completed with the current snapshot once this reload was published or
+     *         discarded, or exceptionally if compilation failed
+     */
+    public CompletableFuture<Snapshot> reloadAsync(Map<String, String> templates, Map<String, String> expressions,
+                                                   Executor executor) {
+        // Copy up front so callers can keep mutating their maps
+        Map<String, String> templateSources = Map.copyOf(templates);
+        Map<String, String> expressionSources = Map.copyOf(expressions);
+        long generation = generations.incrementAndGet();
+        return CompletableFuture.supplyAsync(() -> reload(generation, templateSources, expressionSources), executor);
+    }
+
+    /**
+     * Publish the contents of a rule pack, replacing all previously registered templates,
+     * expressions and value expressions.
+     *
+     * @param pack The rule pack to publish
+     * @return The newly published snapshot
+     */
+    public Snapshot publish(RulePack pack) {
+        Map<String, Template> templates = new HashMap<>();
+        pack.getTemplates().forEach((name, compiled) -> templates.put(name, new Template(compiled)));
+
+        return publish(generations.incrementAndGet(), templates, pack.getExpressions(), pack.getValues());
+    }
+
+    private Snapshot publish(long generation, Map<String, Template> templates, Map<String, Expression> expressions,
+                             Map<String, ValueExpression> values) {
+        return current.updateAndGet(previous -> {
+            if (previous.generation > generation) {
+                // A reload started later is already live
+                return previous;
+            }
+            return new Snapshot(previous.version() + 1, generation, templates, expressions, values, previous.processors);
+        });
+    }
+
+    /**
+     * Register a template processor used by this registry's snapshots for a specific output type.
+     * Types without a processor here fall back to those registered with {@link Template#registerProcessor}.
+     *
+     * @param <T> The output type
+     * @param type The class of the output type
+     * @param processor The processor to register
+     * @return The newly published snapshot
+     */
+    public <T> Snapshot registerProcessor(Class<T> type, TemplateProcessor<T> processor) {
+        return current.updateAndGet(previous -> {
+            Map<Class<?>, TemplateProcessor<?>> processors = new HashMap<>(previous.processors);
+            processors.put(type, processor);
+            return new Snapshot(previous.version() + 1, previous.generation, previous.templates, previous.expressions,
+                    previous.values, processors);
+        });
+    }
+
+    /**
+     * An immutable version of the registry's contents.
+     */
+    public static final class Snapshot {
+        private final long version;
+        // The reload the contents came from
+        private final long generation;
+        private final Map<String, Template> templates;
+        private final Map<String, Expression> expressions;
+        private final Map<String, ValueExpression> values;
+        private final Map<Class<?>, TemplateProcessor<?>> processors;
+
+        private Snapshot(long version, long generation, Map<String, Template> templates,
+                         Map<String, Expression> expressions, Map<String, ValueExpression> values,
+                         Map<Class<?>, TemplateProcessor<?>> processors) {
+            this.version = version;
+            this.generation = generation;
+            this.templates = Map.copyOf(templates);
+            this.expressions = Map.copyOf(expressions);
+            this.values = Map.copyOf(values);
+            this.processors = Map.copyOf(processors);
+        }
+
+        /**
+         * Get the version of this snapshot.
+         */
+        public long version() {
+            return version;
+        }
+
+        /**
+         * Get a template by name.
+         *
+         * @param name The template name
+         * @return The template, or null if not found
+         */
+        public Template getTemplate(String name) {
+            return templates.get(name);
+        }
+
+        /**
+         * Get an expression by name.
+         *
+         * @param name The expression name
+         * @return The expression, or null if not found
+         */
+        public Expression getExpression(String name) {
+            return expressions.get(name);
+        }
+
+        /**
+         * Get a value expression by name.
+         *
+         * @param name The value expression name
+         * @return The value expression, or null if not found
+         */
+        public ValueExpression getValue(String name) {
+            return values.get(name);
+        }
+
+        /**
+         * Get all templates in this snapshot.
+         */
+        public Map<String, Template> getTemplates() {
+            return templates;
+        }
+
+        /**
+         * Get all expressions in this snapshot.
+         */
+        public Map<String, Expression> getExpressions() {
+            return expressions;
+        }
+
+        /**
+         * Get all value expressions in this snapshot.
+         */
+        public Map<String, ValueExpression> getValues() {
+            return values;
+        }
+
+        /**
+         * Render a named template using this snapshot's processor for the output type.
+         *
+         * @param <T> The output type
+         * @param name The template name
+         * @param type The class of the output type
+         * @param context The context containing values to use
+         * @return The processed output of type T
+         * @throws IllegalArgumentException if the template or a processor for the type is missing
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T render(String name, Class<T> type, Context context) {
+            Template template = templates.get(name);
+            if (template == null) {
+                throw new IllegalArgumentException("No template registered with name: " + name);
+            }
+
+            TemplateProcessor<T> processor = (TemplateProcessor<T>) processors.get(type);
+            if (processor == null) {
+                return template.processAs(type, context);
+            }
+            return template.processWith(processor, context);
+        }
+
+        /**
+         * Evaluate a named expression.
+         *
+         * @param name The expression name
+         * @param context The context to evaluate against
+         * @return The result of the expression
+         * @throws IllegalArgumentException if the expression is missing
+         */
+        public boolean evaluate(String name, Context context) {
+            Expression expression = expressions.get(name);
+            if (expression == null) {
+                throw new IllegalArgumentException("No expression registered with name: " + name);
+            }
+            return expression.evaluate(context);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package net.colorfulmc.canvas;
+
+/**
+ * Context that binds one variable on top of a parent context, used for loop variables.
+ * <p>
+ * A loop creates a single scope and rebinds its value for every element, so iterating
+ * does not allocate a context per element. Scopes are confined to the rendering thread.
+ */
+final class ScopedContext implements Context {
+    private final Context parent;
+    private final String name;
+    private Object value;
+
+    ScopedContext(Context parent, String name) {
+        this.parent = parent;
+        this.name = name;
+    }
+
+    void bind(Object value) {
+        this.value = value;
+    }
+
+    Context getParent() {
+        return parent;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    @Override
+    public Object get(String key) {
+        return name.equals(key) ? value : parent.get(key);
+    }
+
+    @Override
+    public Context with(String key, Object value) {
+        if (name.equals(key)) {
+            return parent.with(key, value);
+        }
+        // Derived contexts keep a snapshot of the current binding
+        ScopedContext derived = new ScopedContext(parent.with(key, value), name);
+        derived.bind(this.value);
+        return derived;
+    }
+}
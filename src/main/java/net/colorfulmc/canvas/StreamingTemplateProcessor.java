@@ -0,0 +1,445 @@
+package net.colorfulmc.canvas;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Template processor that reads its template incrementally and writes output as it goes.
+ * <p>
+ * The template is scanned a buffer at a time, with placeholders and section tags recognised
+ * even when they span buffer boundaries, so memory use does not depend on the template size.
+ * {@code ${#if}} sections are evaluated when their tag is read and untaken branches are
+ * skipped without being evaluated. An {@code ${#each}} section buffers only its own body,
+ * which is compiled and rendered once per element when the section closes.
+ * <p>
+ * Output matches {@link Template}: an unterminated {@code ${}, or one whose closing brace is
+ * on a later line, is literal text, and malformed sections are rejected even inside branches
+ * and loops that are never rendered. Unlike {@link Template}, a single placeholder is limited
+ * to 4096 characters; a longer one is written as literal text.
+ * <p>
+ * Instances hold no state between calls and can be shared.
+ */
+public class StreamingTemplateProcessor implements TemplateProcessor<String> {
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    private static final int MAX_TAG_LENGTH = 4096;
+    private static final int MAX_CACHED_TAGS = 1024;
+    // Maximum number of bytes of a file mapped at once
+    private static final long MAP_WINDOW = 1L << 26;
+
+    private final int bufferSize;
+
+    /**
+     * Create a new StreamingTemplateProcessor with the default buffer size.
+     */
+    public StreamingTemplateProcessor() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create a new StreamingTemplateProcessor.
+     *
+     * @param bufferSize The number of characters read at a time
+     */
+    public StreamingTemplateProcessor(int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public String process(String template, Context context) {
+        StringBuilder out = new StringBuilder(template.length() + 16);
+        try {
+            process(new StringReader(template), context, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    @Override
+    public String process(CompiledTemplate template, Context context) {
+        return template.render(context);
+    }
+
+    /**
+     * Process a template read from a Reader.
+     *
+     * @param in The template source
+     * @param context The context containing values to use
+     * @param out The output to write to
+     * @throws IOException if reading or writing fails
+     * @throws IllegalArgumentException if the template is malformed or a placeholder has no value
+     */
+    public void process(Reader in, Context context, Appendable out) throws IOException {
+        Scanner scanner = new Scanner(bufferSize, context, out);
+        int read;
+        while ((read = in.read(scanner.buffer, 0, scanner.buffer.length)) >= 0) {
+            scanner.feed(read);
+        }
+        scanner.finish();
+    }
+
+    /**
+     * Process a template read from a byte channel.
+     *
+     * @param in The template source
+     * @param charset The charset the template is encoded in
+     * @param context The context containing values to use
+     * @param out The output to write to
+     * @throws IOException if reading, decoding or writing fails
+     * @throws IllegalArgumentException if the template is malformed or a placeholder has no value
+     */
+    public void process(ReadableByteChannel in, Charset charset, Context context, Appendable out) throws IOException {
+        process(Channels.newReader(in, newDecoder(charset), -1), context, out);
+    }
+
+    /**
+     * Process a template file, memory-mapping it rather than reading it onto the heap.
+     *
+     * @param file The template file
+     * @param charset The charset the file is encoded in
+     * @param context The context containing values to use
+     * @param out The output to write to
+     * @throws IOException if reading, decoding or writing fails
+     * @throws IllegalArgumentException if the template is malformed or a placeholder has no value
+     */
+    public void process(Path file, Charset charset, Context context, Appendable out) throws IOException {
+        Scanner scanner = new Scanner(bufferSize, context, out);
+        CharBuffer chars = CharBuffer.wrap(scanner.buffer);
+        CharsetDecoder decoder = newDecoder(charset);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            boolean last;
+            do {
+                long length = Math.min(MAP_WINDOW, size - position);
+                last = position + length >= size;
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+                CoderResult result;
+                do {
+                    result = decoder.decode(window, chars, last);
+                    if (result.isError()) {
+                        result.throwException();
+                    }
+                    scanner.feed(chars.position());
+                    chars.clear();
+                } while (result.isOverflow());
+
+                // A character split across windows is decoded again from the start of the next window
+                position += window.position();
+            } while (!last);
+        }
+
+        CoderResult result;
+        do {
+            result = decoder.flush(chars);
+            scanner.feed(chars.position());
+            chars.clear();
+        } while (result.isOverflow());
+        scanner.finish();
+    }
+
+    private static CharsetDecoder newDecoder(Charset charset) {
+        return charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+    }
+
+    /**
+     * State of a single streaming run.
+     */
+    private static final class Scanner {
+        private static final int TEXT = 0;
+        private static final int DOLLAR = 1;
+        private static final int TAG = 2;
+
+        // Kinds of sections opened inside a loop body
+        private static final char IF = 'i';
+        private static final char ELSE = 'l';
+        private static final char EACH = 'e';
+
+        final char[] buffer;
+        private final CharBuffer view;
+        private final Context context;
+        private final Appendable out;
+        private final StringBuilder tag = new StringBuilder();
+        private final StringBuilder scratch = new StringBuilder();
+        private final Deque<Branch> branches = new ArrayDeque<>();
+        private final Map<String, Object> compiled = new HashMap<>();
+        private int state = TEXT;
+
+        // The body of the ${#each} section being read, if any
+        private String loopHeader;
+        private StringBuilder loopBody;
+        private final StringBuilder loopSections = new StringBuilder();
+        private boolean loopActive;
+
+        Scanner(int bufferSize, Context context, Appendable out) {
+            this.buffer = new char[bufferSize];
+            this.view = CharBuffer.wrap(buffer);
+            this.context = context;
+            this.out = out;
+        }
+
+        /**
+         * Scan the first {@code length} characters of the buffer.
+         */
+        void feed(int length) throws IOException {
+            int textStart = 0;
+            for (int i = 0; i < length; i++) {
+                char c = buffer[i];
+                if (state == TEXT) {
+                    if (c == '$') {
+                        text(textStart, i);
+                        state = DOLLAR;
+                    }
+                } else if (state == DOLLAR) {
+                    if (c == '{') {
+                        tag.setLength(0);
+                        state = TAG;
+                    } else {
+                        text("$");
+                        state = TEXT;
+                        textStart = i;
+                        // Scan the character again as text, it may start another placeholder
+                        i--;
+                    }
+                } else if (c == '}') {
+                    state = TEXT;
+                    textStart = i + 1;
+                    tag(tag.toString());
+                } else if (isLineTerminator(c)) {
+                    // Like Template, placeholders do not span lines; the text read so far is literal
+                    abandonTag();
+                    state = TEXT;
+                    textStart = i;
+                } else if (tag.length() >= MAX_TAG_LENGTH) {
+                    // Too long to buffer as a placeholder, so it is literal as well
+                    abandonTag();
+                    state = TEXT;
+                    textStart = i;
+                    // Scan the character again as text, it may start another placeholder
+                    i--;
+                } else {
+                    tag.append(c);
+                }
+            }
+
+            if (state == TEXT) {
+                text(textStart, length);
+            }
+        }
+
+        void finish() throws IOException {
+            if (state == DOLLAR) {
+                text("$");
+            } else if (state == TAG) {
+                abandonTag();
+            }
+            if (loopBody != null) {
+                throw new IllegalArgumentException("Unclosed ${#each " + loopHeader + "}");
+            }
+            if (!branches.isEmpty()) {
+                throw new IllegalArgumentException("Unclosed ${#if " + branches.peek().condition + "}");
+            }
+        }
+
+        private void abandonTag() throws IOException {
+            text("${" + tag);
+        }
+
+        private static boolean isLineTerminator(char c) {
+            // The characters '.' does not match in Template.PLACEHOLDER_PATTERN
+            return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+        }
+
+        private boolean active() {
+            Branch branch = branches.peek();
+            return branch == null || branch.active();
+        }
+
+        private void text(int from, int to) throws IOException {
+            if (to <= from) {
+                return;
+            }
+            if (loopBody != null) {
+                if (loopActive) {
+                    loopBody.append(buffer, from, to - from);
+                }
+            } else if (active()) {
+                if (out instanceof Writer writer) {
+                    writer.write(buffer, from, to - from);
+                } else if (out instanceof StringBuilder builder) {
+                    builder.append(buffer, from, to - from);
+                } else {
+                    out.append(view, from, to);
+                }
+            }
+        }
+
+        private void text(String text) throws IOException {
+            if (loopBody != null) {
+                if (loopActive) {
+                    loopBody.append(text);
+                }
+            } else if (active()) {
+                out.append(text);
+            }
+        }
+
+        private void tag(String raw) throws IOException {
+            String trimmed = raw.trim();
+
+            if (loopBody != null) {
+                if (!nest(trimmed)) {
+                    endLoop();
+                    return;
+                }
+                if (loopActive) {
+                    loopBody.append("${").append(raw).append('}');
+                }
+                return;
+            }
+
+            if (trimmed.startsWith("#if ")) {
+                String condition = trimmed.substring(4).trim();
+                boolean enclosing = active();
+                // Conditions inside an untaken branch are never evaluated
+                boolean taken = enclosing && condition(condition).evaluate(context);
+                branches.push(new Branch(condition, enclosing, taken));
+            } else if (trimmed.equals("#else")) {
+                Branch branch = branches.peek();
+                if (branch == null || branch.inElse) {
+                    throw new IllegalArgumentException("Unexpected ${#else}");
+                }
+                branch.inElse = true;
+            } else if (trimmed.equals("/if")) {
+                if (branches.isEmpty()) {
+                    throw new IllegalArgumentException("Unexpected ${/if}");
+                }
+                branches.pop();
+            } else if (trimmed.startsWith("#each ")) {
+                loopHeader = trimmed.substring(6).trim();
+                loopBody = new StringBuilder();
+                loopSections.setLength(0);
+                loopActive = active();
+            } else if (trimmed.equals("/each") || trimmed.startsWith("#")) {
+                throw new IllegalArgumentException("Unexpected ${" + trimmed + "}");
+            } else if (active()) {
+                scratch.setLength(0);
+                placeholder(raw).render(context, scratch);
+                out.append(scratch);
+            }
+        }
+
+        /**
+         * Track the sections opened inside a loop body, so its structure is checked like
+         * CompiledTemplate checks it even when the body is never rendered.
+         *
+         * @return false if the tag closes the loop itself
+         */
+        private boolean nest(String tag) {
+            int last = loopSections.length() - 1;
+            char open = last >= 0 ? loopSections.charAt(last) : 0;
+            if (tag.startsWith("#if ")) {
+                loopSections.append(IF);
+            } else if (tag.startsWith("#each ")) {
+                loopSections.append(EACH);
+            } else if (tag.equals("#else") && open == IF) {
+                loopSections.setCharAt(last, ELSE);
+            } else if (tag.equals("/if") && (open == IF || open == ELSE)
+                    || tag.equals("/each") && open == EACH) {
+                loopSections.setLength(last);
+            } else if (tag.equals("/each") && open == 0) {
+                return false;
+            } else if (tag.startsWith("#") || tag.equals("/if") || tag.equals("/each")) {
+                throw new IllegalArgumentException("Unexpected ${" + tag + "}");
+            }
+            return true;
+        }
+
+        private void endLoop() throws IOException {
+            String header = loopHeader;
+            String body = loopBody.toString();
+            boolean run = loopActive;
+            loopHeader = null;
+            loopBody = null;
+            if (!run) {
+                return;
+            }
+
+            CompiledTemplate.Loop loop = CompiledTemplate.Loop.parse(header, CompiledTemplate.compile(body).getSegments());
+            ScopedContext scope = new ScopedContext(context, loop.variable);
+            for (Object element : loop.elements(loop.field.evaluate(context))) {
+                GuardedContext.step(scope);
+                scope.bind(element);
+                scratch.setLength(0);
+                CompiledTemplate.renderAll(loop.body, scope, scratch);
+                out.append(scratch);
+            }
+        }
+
+        private Expression condition(String condition) {
+            return (Expression) cached("#if " + condition, () -> ExpressionParser.parse("{" + condition + "}"));
+        }
+
+        private CompiledTemplate.Placeholder placeholder(String raw) {
+            return (CompiledTemplate.Placeholder) cached(raw, () -> CompiledTemplate.Placeholder.parse(raw));
+        }
+
+        private Object cached(String key, Supplier<Object> parser) {
+            Object value = compiled.get(key);
+            if (value == null) {
+                // Keep memory bounded for templates with many distinct tags
+                if (compiled.size() >= MAX_CACHED_TAGS) {
+                    compiled.clear();
+                }
+                value = parser.get();
+                compiled.put(key, value);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * An open ${#if} section.
+     */
+    private static final class Branch {
+        final String condition;
+        final boolean enclosing;
+        final boolean taken;
+        boolean inElse;
+
+        Branch(String condition, boolean enclosing, boolean taken) {
+            this.condition = condition;
+            this.enclosing = enclosing;
+            this.taken = taken;
+        }
+
+        boolean active() {
+            return enclosing && (inElse ? !taken : taken);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package net.colorfulmc.canvas;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -10,8 +11,24 @@ import java.util.regex.Pattern;
  */
 public class Template {
     public static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("\\$\\{(.*?)}");
-    private final String template;
-    private static final Map<Class<?>, TemplateProcessor<?>> PROCESSORS = new HashMap<>();
+    private final String source;
+    // Compiled on first use, so processors with their own syntax never compile the template
+    private volatile CompiledTemplate compiled;
+    // Copy-on-write so lookups never lock and registration is safe from any thread
+    private static final AtomicReference<Map<Class<?>, TemplateProcessor<?>>> PROCESSORS =
+            new AtomicReference<>(Map.of());
+    // Whether a processor class overrides process(CompiledTemplate, Context)
+    private static final ClassValue<Boolean> USES_COMPILED = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                return type.getMethod("process", CompiledTemplate.class, Context.class).getDeclaringClass()
+                        != TemplateProcessor.class;
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    };
 
     // Register default string processor
     static {
@@ -19,12 +36,40 @@ public class Template {
     }
 
     /**
-     * Create a new template from a string.
+     * Create a new template from a string. The template is compiled when it is first
+     * processed with a processor that works on the compiled form.
      *
      * @param template The template string containing placeholders
      */
     public Template(String template) {
-        this.template = template;
+        this.source = template;
+    }
+
+    /**
+     * Create a new template from an already compiled template.
+     *
+     * @param compiled The compiled template
+     */
+    public Template(CompiledTemplate compiled) {
+        this.source = compiled.getSource();
+        this.compiled = compiled;
+    }
+
+    /**
+     * Get the compiled form of this template, compiling it on first use.
+     *
+     * @return The compiled template
+     * @throws IllegalArgumentException if a placeholder has an invalid path or format specifier,
+     *                                  or a section is malformed or not closed
+     */
+    public CompiledTemplate getCompiled() {
+        CompiledTemplate result = compiled;
+        if (result == null) {
+            // Compiling twice on a race is harmless, both results are equivalent
+            result = CompiledTemplate.compile(source);
+            compiled = result;
+        }
+        return result;
     }
 
     /**
@@ -46,13 +91,38 @@ public class Template {
      * @return The processed output of type T
      * @throws IllegalArgumentException if no processor is registered for the type
      */
-    @SuppressWarnings("unchecked")
     public <T> T processAs(Class<T> type, Context context) {
-        TemplateProcessor<T> processor = (TemplateProcessor<T>) PROCESSORS.get(type);
+        TemplateProcessor<T> processor = getProcessor(type);
         if (processor == null) {
             throw new IllegalArgumentException("No template processor registered for type: " + type.getName());
         }
-        return processor.process(template, context);
+        return processWith(processor, context);
+    }
+
+    /**
+     * Process the template using a specific processor instance.
+     *
+     * @param <T> The output type
+     * @param processor The processor to use
+     * @param context The context containing values to use
+     * @return The processed output of type T
+     */
+    public <T> T processWith(TemplateProcessor<T> processor, Context context) {
+        if (compiled == null && !USES_COMPILED.get(processor.getClass())) {
+            return processor.process(source, context);
+        }
+        return processor.process(getCompiled(), context);
+    }
+
+    /**
+     * Render the template while recording each placeholder's result, timing, allocations
+     * and member lookups. See {@link Explain}.
+     *
+     * @param context The context containing values to use
+     * @return The root of the explained tree, whose result is the rendered string
+     */
+    public ExplainNode explain(Context context) {
+        return Explain.explainTemplate(this, context);
     }
 
     /**
@@ -63,7 +133,23 @@ public class Template {
      * @param processor The processor to register
      */
     public static <T> void registerProcessor(Class<T> type, TemplateProcessor<T> processor) {
-        PROCESSORS.put(type, processor);
+        PROCESSORS.updateAndGet(processors -> {
+            Map<Class<?>, TemplateProcessor<?>> updated = new HashMap<>(processors);
+            updated.put(type, processor);
+            return Map.copyOf(updated);
+        });
+    }
+
+    /**
+     * Get the processor registered for a specific output type.
+     *
+     * @param <T> The output type
+     * @param type The class of the output type
+     * @return The registered processor, or null if none is registered
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> TemplateProcessor<T> getProcessor(Class<T> type) {
+        return (TemplateProcessor<T>) PROCESSORS.get().get(type);
     }
 
     /**
@@ -94,7 +180,7 @@ public class Template {
      * Utility method to resolve a path expression from the context.
      */
     public static Object resolvePath(String path, Context context) {
-        if (path.contains(".")) {
+        if (path.contains(".") || path.contains("[")) {
             return new FieldExpression(path).evaluate(context);
         } else {
             return context.get(path);
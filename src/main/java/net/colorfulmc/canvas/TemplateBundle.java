@@ -0,0 +1,385 @@
+package net.colorfulmc.canvas;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A named set of message templates, e.g. one language of a localization.
+ * <p>
+ * Template sources are kept as bytes packed into one shared array rather than as a
+ * {@link Template} per message: Latin-1 text takes one byte per character, anything else is
+ * stored as UTF-8. A template is compiled the first time it is used and kept in a bounded
+ * cache, so messages that are never shown cost only their bytes. Compiled templates sit in a
+ * slot per key and are read without locking; when the cache is full, a clock sweep evicts
+ * templates that were not used since its last pass, approximating least recently used.
+ * <p>
+ * Bundle files use the {@link Properties} format, read as UTF-8. Instances are thread-safe.
+ */
+public final class TemplateBundle {
+    private final String name;
+    private final String[] keys;
+    private final byte[] data;
+    private final int[] offsets;
+    private final BitSet utf8;
+    private final int cacheSize;
+    // Compiled templates by key index, with a flag set on every use for the clock sweep
+    private final AtomicReferenceArray<CompiledTemplate> compiled;
+    private final boolean[] used;
+    private final AtomicInteger cached = new AtomicInteger();
+    // Guarded by compiled
+    private int clockHand;
+
+    private TemplateBundle(String name, Map<String, String> templates, int cacheSize) {
+        if (cacheSize < 1) {
+            throw new IllegalArgumentException("Cache size must be positive: " + cacheSize);
+        }
+
+        TreeMap<String, String> sorted = new TreeMap<>(templates);
+        this.name = name;
+        this.keys = sorted.keySet().toArray(new String[0]);
+        this.offsets = new int[keys.length + 1];
+        this.utf8 = new BitSet(keys.length);
+
+        byte[][] encoded = new byte[keys.length][];
+        int length = 0;
+        for (int i = 0; i < keys.length; i++) {
+            String source = sorted.get(keys[i]);
+            if (isLatin1(source)) {
+                encoded[i] = source.getBytes(StandardCharsets.ISO_8859_1);
+            } else {
+                encoded[i] = source.getBytes(StandardCharsets.UTF_8);
+                utf8.set(i);
+            }
+            length += encoded[i].length;
+        }
+
+        this.data = new byte[length];
+        int position = 0;
+        for (int i = 0; i < keys.length; i++) {
+            offsets[i] = position;
+            System.arraycopy(encoded[i], 0, data, position, encoded[i].length);
+            position += encoded[i].length;
+        }
+        offsets[keys.length] = position;
+
+        this.cacheSize = cacheSize;
+        this.compiled = new AtomicReferenceArray<>(keys.length);
+        this.used = new boolean[keys.length];
+    }
+
+    /**
+     * Create a bundle from template sources.
+     *
+     * @param name The bundle name, e.g. a locale tag
+     * @param templates Template sources by key
+     * @param cacheSize The maximum number of compiled templates to keep
+     * @return The bundle
+     */
+    public static TemplateBundle of(String name, Map<String, String> templates, int cacheSize) {
+        return new TemplateBundle(name, templates, cacheSize);
+    }
+
+    /**
+     * Load a bundle file. The bundle is named after the file, without its extension.
+     *
+     * @param file The properties file to read
+     * @param cacheSize The maximum number of compiled templates to keep
+     * @return The bundle
+     * @throws IOException if the file cannot be read
+     */
+    public static TemplateBundle load(Path file, int cacheSize) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+
+        Map<String, String> templates = new TreeMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            templates.put(key, properties.getProperty(key));
+        }
+        return new TemplateBundle(bundleName(file), templates, cacheSize);
+    }
+
+    /**
+     * Load every {@code .properties} file in a directory, reading the files in parallel.
+     *
+     * @param directory The directory containing the bundle files
+     * @param cacheSize The maximum number of compiled templates to keep per bundle
+     * @return The bundles by name
+     * @throws IOException if the directory or a file cannot be read
+     */
+    public static Map<String, TemplateBundle> loadAll(Path directory, int cacheSize) throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(path -> path.getFileName().toString().endsWith(".properties"))
+                    .filter(Files::isRegularFile)
+                    .toList();
+        }
+
+        try {
+            return files.parallelStream()
+                    .map(file -> {
+                        try {
+                            return load(file, cacheSize);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .collect(Collectors.toUnmodifiableMap(TemplateBundle::getName, Function.identity()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static String bundleName(Path file) {
+        String fileName = file.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(0, dot) : fileName;
+    }
+
+    private static boolean isLatin1(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the name of the bundle.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the number of templates in the bundle.
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Check whether the bundle contains a template.
+     *
+     * @param key The template key
+     * @return True if the bundle has a template for the key
+     */
+    public boolean contains(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Get the source of a template without compiling it.
+     *
+     * @param key The template key
+     * @return The template source, or null if not found
+     */
+    public String getSource(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : source(index);
+    }
+
+    /**
+     * Get a compiled template, compiling it on first use.
+     *
+     * @param key The template key
+     * @return The compiled template, or null if not found
+     * @throws IllegalArgumentException if the template fails to compile
+     */
+    public CompiledTemplate get(String key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+
+        CompiledTemplate template = compiled.get(index);
+        if (template != null) {
+            // A racy flag is fine, the sweep only needs an approximate recency
+            used[index] = true;
+            return template;
+        }
+
+        // A racing thread compiling the same template is harmless, the first one is kept
+        template = CompiledTemplate.compile(source(index));
+        if (!compiled.compareAndSet(index, null, template)) {
+            CompiledTemplate existing = compiled.get(index);
+            return existing != null ? existing : template;
+        }
+        if (cached.incrementAndGet() > cacheSize) {
+            evict(index);
+        }
+        return template;
+    }
+
+    /**
+     * Evict templates other than the one just compiled until the cache is within its size,
+     * skipping and clearing the flag of every template used since the hand last passed it.
+     */
+    private void evict(int keep) {
+        synchronized (compiled) {
+            while (cached.get() > cacheSize) {
+                int index = clockHand;
+                clockHand = (clockHand + 1) % keys.length;
+                if (index == keep || compiled.get(index) == null) {
+                    continue;
+                }
+                if (used[index]) {
+                    used[index] = false;
+                } else if (compiled.getAndSet(index, null) != null) {
+                    cached.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Render a template.
+     *
+     * @param key The template key
+     * @param context The context containing values to use
+     * @return The rendered string
+     * @throws IllegalArgumentException if the template does not exist or fails to render
+     */
+    public String render(String key, Context context) {
+        CompiledTemplate template = get(key);
+        if (template == null) {
+            throw new IllegalArgumentException("No template in bundle " + name + ": " + key);
+        }
+        return template.render(context);
+    }
+
+    /**
+     * Report the heap used by the bundle.
+     *
+     * @return The memory usage
+     */
+    public MemoryUsage memoryUsage() {
+        long keyBytes = 16L + 4L * keys.length;
+        for (String key : keys) {
+            keyBytes += stringBytes(key);
+        }
+
+        int cachedTemplates = 0;
+        long cachedBytes = 0;
+        for (int i = 0; i < keys.length; i++) {
+            CompiledTemplate template = compiled.get(i);
+            if (template != null) {
+                cachedTemplates++;
+                // Compiled segments hold roughly the source text again plus a node per placeholder
+                cachedBytes += 32 + stringBytes(template.getSource()) + 48L * template.getSegments().length;
+            }
+        }
+
+        // Offsets, encoding flags, then the cache slots and their use flags
+        long indexBytes = 16L + 4L * offsets.length + utf8.size() / 8 + 32L + 5L * keys.length;
+        return new MemoryUsage(name, keys.length, 16L + data.length, indexBytes, keyBytes,
+                cachedTemplates, cachedBytes);
+    }
+
+    private static long stringBytes(String value) {
+        // String header plus its backing array, assuming compact strings
+        return 40L + (isLatin1(value) ? value.length() : 2L * value.length());
+    }
+
+    private int indexOf(String key) {
+        return Arrays.binarySearch(keys, key);
+    }
+
+    private String source(int index) {
+        Charset charset = utf8.get(index) ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1;
+        return new String(data, offsets[index], offsets[index + 1] - offsets[index], charset);
+    }
+
+    /**
+     * Estimated heap used by a bundle, in bytes.
+     */
+    public static final class MemoryUsage {
+        private final String bundle;
+        private final int templates;
+        private final long textBytes;
+        private final long indexBytes;
+        private final long keyBytes;
+        private final int compiledTemplates;
+        private final long compiledBytes;
+
+        MemoryUsage(String bundle, int templates, long textBytes, long indexBytes, long keyBytes,
+                    int compiledTemplates, long compiledBytes) {
+            this.bundle = bundle;
+            this.templates = templates;
+            this.textBytes = textBytes;
+            this.indexBytes = indexBytes;
+            this.keyBytes = keyBytes;
+            this.compiledTemplates = compiledTemplates;
+            this.compiledBytes = compiledBytes;
+        }
+
+        public String getBundle() {
+            return bundle;
+        }
+
+        public int getTemplates() {
+            return templates;
+        }
+
+        /**
+         * Get the bytes of the packed template text.
+         */
+        public long getTextBytes() {
+            return textBytes;
+        }
+
+        /**
+         * Get the bytes of the offset, encoding and cache slot tables.
+         */
+        public long getIndexBytes() {
+            return indexBytes;
+        }
+
+        /**
+         * Get the estimated bytes of the template keys.
+         */
+        public long getKeyBytes() {
+            return keyBytes;
+        }
+
+        public int getCompiledTemplates() {
+            return compiledTemplates;
+        }
+
+        /**
+         * Get the estimated bytes of the compiled templates currently cached.
+         */
+        public long getCompiledBytes() {
+            return compiledBytes;
+        }
+
+        public long getTotalBytes() {
+            return textBytes + indexBytes + keyBytes + compiledBytes;
+        }
+
+        @Override
+        public String toString() {
+            return bundle + ": " + templates + " templates, " + getTotalBytes() + "B (text " + textBytes
+                    + "B, index " + indexBytes + "B, keys " + keyBytes + "B, " + compiledTemplates
+                    + " compiled " + compiledBytes + "B)";
+        }
+    }
+}
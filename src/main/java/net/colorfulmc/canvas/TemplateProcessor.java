@@ -19,4 +19,16 @@ public interface TemplateProcessor<T> {
      * @return The processed output of type T
      */
     T process(String template, Context context);
+
+    /**
+     * Process an already compiled template with the given context.
+     * Processors that can work on the compiled form should override this to skip re-scanning the template.
+     *
+     * @param template The compiled template
+     * @param context The context containing values to use
+     * @return The processed output of type T
+     */
+    default T process(CompiledTemplate template, Context context) {
+        return process(template.getSource(), context);
+    }
 }
@@ -0,0 +1,39 @@
+package net.colorfulmc.canvas;
+
+/**
+ * Expression that converts the result of a value expression into a boolean.
+ */
+class TruthExpression implements Expression {
+    private final ValueExpression value;
+
+    TruthExpression(ValueExpression value) {
+        this.value = value;
+    }
+
+    @Override
+    public boolean evaluate(Context context) {
+        GuardedContext.step(context);
+        return isTruthy(value.evaluate(context));
+    }
+
+    /**
+     * Convert an arbitrary value into a boolean.
+     * Booleans are returned as-is, numbers are true when non-zero, null is false
+     * and any other object is true.
+     */
+    static boolean isTruthy(Object result) {
+        if (result instanceof Boolean) {
+            return (Boolean) result;
+        } else if (result instanceof Number) {
+            // Non-zero is true, zero is false
+            return ((Number) result).doubleValue() != 0;
+        } else {
+            // Non-null objects are true
+            return result != null;
+        }
+    }
+
+    ValueExpression getValue() {
+        return value;
+    }
+}
@@ -11,4 +11,15 @@ public interface ValueExpression {
      * @return The result of evaluating the expression
      */
     Object evaluate(Context context);
+
+    /**
+     * Evaluate the value expression node by node, recording each node's result, timing, allocations
+     * and member lookups. See {@link Explain}.
+     *
+     * @param context The context to evaluate against
+     * @return The root of the explained tree
+     */
+    default ExplainNode explain(Context context) {
+        return Explain.explainValue(this, context);
+    }
 }
@@ -1,6 +1,38 @@
 package net.colorfulmc.canvas;
 
 import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IllegalFormatException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class ExpressionTests {
@@ -226,5 +258,1136 @@ public class ExpressionTests {
         });
         assertTrue(exception.getMessage().contains("No value found for placeholder"));
     }
-}
 
+    // --- ColumnarPredicate Tests ---
+
+    @Test
+    public void testColumnarPredicateNumericComparison() {
+        ColumnarTable table = new ColumnarTable()
+                .with("elo", new long[] {1200, 1500, 1800, 1499})
+                .with("kills", new double[] {10, 30, 5, 40})
+                .with("deaths", new double[] {5, 10, 5, 10});
+
+        ColumnarPredicate elo = ColumnarPredicate.compile(ExpressionParser.parse("{elo >= 1500}"));
+        ColumnarPredicate ratio = ColumnarPredicate.compile(ExpressionParser.parse("{kills / deaths > 2}"));
+
+        assertTrue(elo.isVectorized());
+        assertEquals(BitSet.valueOf(new long[] {0b0110}), elo.select(table));
+        assertEquals(BitSet.valueOf(new long[] {0b1010}), ratio.select(table));
+    }
+
+    @Test
+    public void testColumnarPredicateAcrossChunks() {
+        int rows = ColumnarPredicate.CHUNK_SIZE * 2 + 37;
+        long[] values = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            values[i] = i;
+        }
+        ColumnarTable table = new ColumnarTable().with("x", values);
+
+        BitSet selected = ColumnarPredicate.compile(ExpressionParser.parse("{x % 2}")).select(table);
+        assertEquals(rows / 2, selected.cardinality());
+        assertTrue(selected.get(rows - 2));
+        assertFalse(selected.get(rows - 3));
+    }
+
+    @Test
+    public void testColumnarPredicateMatchesRowByRow() {
+        long big = 1L << 53;
+        ColumnarTable table = new ColumnarTable()
+                .with("k", new long[] {5, big + 1, big, -3})
+                .with("m", new long[] {5, big, big + 1, 0})
+                .with("d", new double[] {5.0, Double.NaN, -0.0, 0.0});
+
+        for (String source : List.of("{k == 5.0}", "{k == 5}", "{k == m}", "{k > m}", "{k - m}", "{k / 2 == 2.5}",
+                "{k % 2 == m % 2}", "{d == 0.0}", "{d == d}", "{d < 0.0}", "{d > k}", "{k + d == 10.0}")) {
+            Expression expression = ExpressionParser.parse(source);
+            BitSet expected = new BitSet();
+            for (int row = 0; row < table.rowCount(); row++) {
+                if (expression.evaluate(table.row(row))) {
+                    expected.set(row);
+                }
+            }
+
+            ColumnarPredicate predicate = ColumnarPredicate.compile(expression);
+            assertTrue(predicate.isVectorized(), source);
+            assertEquals(expected, predicate.select(table), source);
+        }
+    }
+
+    @Test
+    public void testColumnarPredicateScalarFallback() {
+        ColumnarTable table = new ColumnarTable()
+                .with("name", new Object[] {"Alice", "Bob", "Alice"});
+
+        ColumnarPredicate predicate = ColumnarPredicate.compile(ExpressionParser.parse("{name == 'Alice'}"));
+        assertFalse(predicate.isVectorized());
+        assertEquals(BitSet.valueOf(new long[] {0b101}), predicate.select(table));
+    }
+
+    @Test
+    public void testColumnarPredicateDivisionByZero() {
+        ColumnarTable table = new ColumnarTable()
+                .with("a", new double[] {1, 2})
+                .with("b", new double[] {1, 0});
+
+        ColumnarPredicate predicate = ColumnarPredicate.compile(ExpressionParser.parse("{a / b > 0}"));
+        assertThrows(ArithmeticException.class, () -> predicate.select(table));
+    }
+
+    // --- PlaceholderFormat Tests ---
+
+    @Test
+    public void testTemplateNumberFormat() {
+        Context ctx = new MapContext().with("score", 1234.5).with("count", 1234567);
+        assertEquals("Score: 1,234.50", Template.process("Score: ${score:%,.2f}", ctx));
+        assertEquals("Count: 1,234,567", Template.process("Count: ${count:%,d}", ctx));
+        assertEquals("[   1234.5]", Template.process("[${score:%9.1f}]", ctx));
+        assertEquals("[01234567]", Template.process("[${count:%08d}]", new MapContext().with("count", 1234567)));
+    }
+
+    @Test
+    public void testTemplateAlignmentFormat() {
+        Context ctx = new MapContext().with("name", "Steve");
+        assertEquals("[Steve     ]", Template.process("[${name:<10}]", ctx));
+        assertEquals("[     Steve]", Template.process("[${name:>10}]", ctx));
+        assertEquals("[..Steve...]", Template.process("[${name:.^10}]", ctx));
+    }
+
+    @Test
+    public void testPlaceholderFormatMatchesStringFormat() {
+        Object[] values = {0, -42, 1.005, -0.001, 123456.789, Long.MIN_VALUE, 3.5f};
+        String[] specs = {"%d", "%,d", "%+d", "%-8d", "%.2f", "%,.3f", "%010.2f", "%x", "%s", "%.3s", "%e"};
+        for (String spec : specs) {
+            for (Object value : values) {
+                String expected;
+                try {
+                    expected = String.format(Locale.ROOT, spec, value);
+                } catch (IllegalFormatException e) {
+                    continue;
+                }
+                StringBuilder out = new StringBuilder();
+                PlaceholderFormat.of(spec).format(value, out);
+                assertEquals(expected, out.toString(), spec + " with " + value);
+            }
+        }
+    }
+
+    @Test
+    public void testPlaceholderFormatInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> CompiledTemplate.compile("${score:%q}"));
+        assertThrows(IllegalArgumentException.class, () -> CompiledTemplate.compile("${score:16}"));
+    }
+
+    @Test
+    public void testPlaceholderFormatDelegatesToStringFormat() {
+        Object[][] cases = {
+                {"%tY", LocalDate.of(2024, 5, 1)},
+                {"%(d", -5},
+                {"%#x", 255},
+                {"%x", (short) -3},
+                {"%x", (byte) -3},
+                {"%X", -3L},
+                {"%x", BigInteger.valueOf(-3)},
+                {"%,d", new BigInteger("123456789012345678901234567890")}
+        };
+        for (Object[] c : cases) {
+            StringBuilder out = new StringBuilder();
+            PlaceholderFormat.of((String) c[0]).format(c[1], out);
+            assertEquals(String.format(Locale.ROOT, (String) c[0], c[1]), out.toString(), c[0] + " with " + c[1]);
+        }
+
+        // Specifiers and values String.format rejects are rejected as well
+        assertThrows(IllegalArgumentException.class, () -> PlaceholderFormat.of("%-08d"));
+        assertThrows(IllegalArgumentException.class, () -> PlaceholderFormat.of("%.2d"));
+        assertThrows(IllegalArgumentException.class, () -> PlaceholderFormat.of("%-d"));
+        assertThrows(IllegalArgumentException.class, () -> PlaceholderFormat.of("%d").format(1.5, new StringBuilder()));
+        assertThrows(IllegalArgumentException.class, () -> PlaceholderFormat.of("%d").format(1e20, new StringBuilder()));
+        assertThrows(IllegalArgumentException.class,
+                () -> PlaceholderFormat.of("%d").format(new BigDecimal("1.5"), new StringBuilder()));
+    }
+
+    @Test
+    public void testTemplateCompilesLazily() {
+        // Processors with their own syntax never see the template compiled
+        TemplateProcessor<StringBuilder> raw = (template, context) -> new StringBuilder(template);
+        Template template = new Template("${time:HH:mm}");
+        assertEquals("${time:HH:mm}", template.processWith(raw, new MapContext()).toString());
+        assertThrows(IllegalArgumentException.class, template::getCompiled);
+    }
+
+    // --- ExpressionCodec / RulePack Tests ---
+
+    @Test
+    public void testExpressionCodecRoundTrip() {
+        Context ctx = new MapContext().with("kills", 30).with("deaths", 10).with("name", "Steve");
+        String[] sources = {"{kills / deaths > 2}", "{name == 'Steve'}", "{kills - 30}", "{(kills + 2) * 1.5 >= 48}"};
+        for (String source : sources) {
+            Expression expr = ExpressionParser.parse(source);
+            Expression decoded = ExpressionCodec.decode(ExpressionCodec.encode(expr));
+            assertEquals(expr.evaluate(ctx), decoded.evaluate(ctx), source);
+        }
+    }
+
+    @Test
+    public void testExpressionCodecRejectsGarbage() {
+        assertThrows(IllegalArgumentException.class, () -> ExpressionCodec.decode(new byte[] {99}));
+        assertThrows(IllegalArgumentException.class, () -> ExpressionCodec.decode(new byte[] {1, 21}));
+    }
+
+    @Test
+    public void testRulePackWarmLoad() throws Exception {
+        Path dir = Files.createTempDirectory("canvas-pack");
+        try {
+            Path file = dir.resolve("rules.pack");
+            Map<String, String> expressions = Map.of("veteran", "{elo >= 1500}");
+            Map<String, String> values = Map.of("ratio", "kills / deaths");
+            Map<String, String> templates = Map.of("greeting", "Hello, ${name:>6}!");
+
+            RulePack cold = RulePack.load(file, expressions, values, templates);
+            assertFalse(cold.isWarm());
+            assertTrue(Files.exists(file));
+
+            RulePack warm = RulePack.load(file, expressions, values, templates);
+            assertTrue(warm.isWarm());
+            Context ctx = new MapContext().with("elo", 1600).with("kills", 9).with("deaths", 3).with("name", "Bob");
+            assertTrue(warm.getExpression("veteran").evaluate(ctx));
+            assertEquals(3.0, warm.getValue("ratio").evaluate(ctx));
+            assertEquals("Hello,    Bob!", warm.getTemplate("greeting").render(ctx));
+
+            RuleRegistry registry = new RuleRegistry();
+            registry.publish(warm);
+            assertEquals(3.0, registry.getValue("ratio").evaluate(ctx));
+            assertTrue(registry.evaluate("veteran", ctx));
+
+            // Changing a source invalidates the pack
+            RulePack changed = RulePack.load(file, Map.of("veteran", "{elo >= 2000}"), values, templates);
+            assertFalse(changed.isWarm());
+            assertFalse(changed.getExpression("veteran").evaluate(ctx));
+
+            // A corrupt pack is rebuilt instead of failing
+            Files.write(file, new byte[] {1, 2, 3});
+            assertFalse(RulePack.load(file, expressions, values, templates).isWarm());
+            assertTrue(RulePack.load(file, expressions, values, templates).isWarm());
+
+            // A pack that can't be cached is still returned
+            RulePack uncached = RulePack.load(file.resolve("nested.pack"), expressions, values, templates);
+            assertFalse(uncached.isWarm());
+            assertTrue(uncached.getExpression("veteran").evaluate(ctx));
+        } finally {
+            try (var files = Files.list(dir)) {
+                for (Path entry : files.toList()) {
+                    Files.delete(entry);
+                }
+            }
+            Files.delete(dir);
+        }
+    }
+
+    // --- RuleRegistry Tests ---
+
+    @Test
+    public void testRuleRegistryReload() {
+        RuleRegistry registry = new RuleRegistry();
+        registry.reload(Map.of("greeting", "Hello, ${name}!"), Map.of("vip", "{rank == 'vip'}"));
+        Context ctx = new MapContext().with("name", "Alex").with("rank", "vip");
+
+        RuleRegistry.Snapshot before = registry.snapshot();
+        assertEquals("Hello, Alex!", registry.render("greeting", ctx));
+        assertTrue(registry.evaluate("vip", ctx));
+
+        registry.reload(Map.of("greeting", "Hi ${name}"), Map.of());
+        assertEquals(before.version() + 1, registry.version());
+        assertEquals("Hi Alex", registry.render("greeting", ctx));
+        // Work that grabbed the old snapshot keeps seeing the old version
+        assertEquals("Hello, Alex!", before.render("greeting", String.class, ctx));
+        assertThrows(IllegalArgumentException.class, () -> registry.evaluate("vip", ctx));
+    }
+
+    @Test
+    public void testRuleRegistryFailedReloadKeepsPreviousVersion() {
+        RuleRegistry registry = new RuleRegistry();
+        registry.reload(Map.of("greeting", "Hello"), Map.of());
+        long version = registry.version();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> registry.reload(Map.of("greeting", "Bye"), Map.of("broken", "missing braces")));
+        assertEquals(version, registry.version());
+        assertEquals("Hello", registry.render("greeting", new MapContext()));
+    }
+
+    @Test
+    public void testRuleRegistryAsyncReloadAndProcessors() throws Exception {
+        RuleRegistry registry = new RuleRegistry();
+        registry.registerProcessor(String.class, new TemplateProcessor<>() {
+            @Override
+            public String process(String template, Context context) {
+                return template.toUpperCase();
+            }
+        });
+
+        RuleRegistry.Snapshot snapshot = registry.reloadAsync(Map.of("shout", "hey ${name}"), Map.of(), Runnable::run).get();
+        assertEquals("HEY ${NAME}", snapshot.render("shout", String.class, new MapContext()));
+        assertEquals(snapshot.version(), registry.version());
+    }
+
+    @Test
+    public void testRuleRegistryAsyncReloadsPublishInStartOrder() throws Exception {
+        RuleRegistry registry = new RuleRegistry();
+        List<Runnable> tasks = new ArrayList<>();
+        CompletableFuture<RuleRegistry.Snapshot> older = registry.reloadAsync(Map.of("motd", "old"), Map.of(), tasks::add);
+        CompletableFuture<RuleRegistry.Snapshot> newer = registry.reloadAsync(Map.of("motd", "new"), Map.of(), tasks::add);
+
+        // The newer reload finishes first
+        tasks.get(1).run();
+        tasks.get(0).run();
+        assertEquals("new", registry.render("motd", new MapContext()));
+        assertSame(newer.get(), older.get());
+        assertEquals(1, registry.version());
+    }
+
+    // --- Indexed and aggregate path Tests ---
+
+    public record Item(String type, int amount) {
+    }
+
+    @Test
+    public void testFieldExpressionIndexAndKey() {
+        Context ctx = new MapContext()
+                .with("inventory", List.of(new Item("stone", 64), new Item("dirt", 3)))
+                .with("stats", Map.of("kills", 12, "k-d", 1.5))
+                .with("scores", new int[] {5, 7});
+
+        assertEquals(64, new FieldExpression("inventory[0].amount").evaluate(ctx));
+        assertEquals("dirt", new FieldExpression("inventory[1].type").evaluate(ctx));
+        assertNull(new FieldExpression("inventory[5].amount").evaluate(ctx));
+        assertEquals(12, new FieldExpression("stats[\"kills\"]").evaluate(ctx));
+        assertEquals(12, new FieldExpression("stats.kills").evaluate(ctx));
+        assertEquals(7, new FieldExpression("scores[1]").evaluate(ctx));
+        assertTrue(ExpressionParser.parse("{stats['k-d'] > 1}").evaluate(ctx));
+        assertEquals("Top: stone x64", Template.process("Top: ${inventory[0].type} x${inventory[0].amount}", ctx));
+    }
+
+    @Test
+    public void testFieldExpressionAggregates() {
+        Context ctx = new MapContext()
+                .with("members", List.of(3, 9, 4))
+                .with("damage", new double[] {1.5, 2.5})
+                .with("flags", List.of(false, true))
+                .with("empty", List.of());
+
+        assertEquals(3, new FieldExpression("members.size").evaluate(ctx));
+        assertEquals(16L, new FieldExpression("members.sum").evaluate(ctx));
+        assertEquals(3L, new FieldExpression("members.min").evaluate(ctx));
+        assertEquals(9L, new FieldExpression("members.max").evaluate(ctx));
+        assertEquals(4.0, new FieldExpression("damage.sum").evaluate(ctx));
+        assertEquals(true, new FieldExpression("flags.any").evaluate(ctx));
+        assertNull(new FieldExpression("empty.max").evaluate(ctx));
+        assertTrue(ExpressionParser.parse("{members.size >= 3}").evaluate(ctx));
+    }
+
+    public record Range(int min, int max) {
+    }
+
+    @Test
+    public void testFieldExpressionMembersShadowAggregates() {
+        Context ctx = new MapContext()
+                .with("shop", Map.of("size", "large", "stock", 4))
+                .with("counts", Map.of("a", 2, "b", 5))
+                .with("range", new Range(1, 8));
+
+        assertEquals("large", new FieldExpression("shop.size").evaluate(ctx));
+        assertEquals(2, new FieldExpression("counts.size").evaluate(ctx));
+        assertEquals(7L, new FieldExpression("counts.sum").evaluate(ctx));
+        assertEquals(1, new FieldExpression("range.min").evaluate(ctx));
+        assertEquals(8, new FieldExpression("range.max").evaluate(ctx));
+        assertNull(new FieldExpression("range.sum").evaluate(ctx));
+        assertTrue(ExpressionParser.parse("{range.max - range.min > 6}").evaluate(ctx));
+    }
+
+    @Test
+    public void testFieldExpressionInvalidPath() {
+        assertThrows(IllegalArgumentException.class, () -> new FieldExpression("items[0"));
+        assertThrows(IllegalArgumentException.class, () -> new FieldExpression("items[x]"));
+        assertThrows(IllegalArgumentException.class, () -> new FieldExpression("items..x"));
+    }
+
+    // --- Specializing node Tests ---
+
+    @Test
+    public void testParserEmitsSpecializedNodes() {
+        Expression comparison = ExpressionParser.parse("{a + 1 > 5}");
+        assertTrue(comparison instanceof ComparisonNodes.GreaterThan);
+        assertTrue(((ComparisonExpression) comparison).getLeft() instanceof MathNodes.Add);
+    }
+
+    @Test
+    public void testSpecializedNodesMatchGenericAcrossTypeChanges() {
+        Object[] values = {3, 7L, 2.5, "4", "1.5", 0, 0.0, "abc"};
+        String[] mathOperators = {"+", "-", "*", "/", "%", "^"};
+        String[] comparisonOperators = {"==", "is", "!=", ">", "<", ">=", "<="};
+
+        for (String op : mathOperators) {
+            // A single node sees every type combination in turn, so it specializes and then generalizes
+            MathExpression specialized = MathExpression.of(new FieldExpression("a"), op, new FieldExpression("b"));
+            MathExpression generic = new MathExpression(new FieldExpression("a"), op, new FieldExpression("b"));
+            for (Object a : values) {
+                for (Object b : values) {
+                    Context ctx = new MapContext().with("a", a).with("b", b);
+                    MathExpression fresh = MathExpression.of(new FieldExpression("a"), op, new FieldExpression("b"));
+                    Object expected = outcome(() -> generic.evaluate(ctx));
+                    assertEquals(expected, outcome(() -> specialized.evaluate(ctx)), a + " " + op + " " + b);
+                    assertEquals(expected, outcome(() -> fresh.evaluate(ctx)), a + " " + op + " " + b);
+                }
+            }
+        }
+
+        for (String op : comparisonOperators) {
+            ComparisonExpression specialized = ComparisonExpression.of(new FieldExpression("a"), op, new FieldExpression("b"));
+            ComparisonExpression generic = new ComparisonExpression(new FieldExpression("a"), op, new FieldExpression("b"));
+            for (Object a : values) {
+                for (Object b : values) {
+                    Context ctx = new MapContext().with("a", a).with("b", b);
+                    ComparisonExpression fresh = ComparisonExpression.of(new FieldExpression("a"), op, new FieldExpression("b"));
+                    Object expected = outcome(() -> generic.evaluate(ctx));
+                    assertEquals(expected, outcome(() -> specialized.evaluate(ctx)), a + " " + op + " " + b);
+                    assertEquals(expected, outcome(() -> fresh.evaluate(ctx)), a + " " + op + " " + b);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIntegralComparisonsAreExact() {
+        // 2^53 and 2^53 + 1 are the same double
+        Context ctx = new MapContext().with("a", (1L << 53) + 1).with("b", 1L << 53);
+        Expression specialized = ExpressionParser.parse("{a > b}");
+        assertTrue(specialized.evaluate(ctx));
+        assertTrue(specialized.evaluate(ctx));
+        assertTrue(new ComparisonExpression(new FieldExpression("a"), ">", new FieldExpression("b")).evaluate(ctx));
+        assertFalse(ExpressionParser.parse("{a == b}").evaluate(ctx));
+    }
+
+    private static Object outcome(Supplier<Object> evaluation) {
+        try {
+            return evaluation.get();
+        } catch (RuntimeException e) {
+            return e.getClass();
+        }
+    }
+
+    // --- In / Matches Tests ---
+
+    @Test
+    public void testInExpression() {
+        Context ctx = new MapContext().with("world", "hub").with("level", 5L).with("home", "spawn");
+
+        assertTrue(ExpressionParser.parse("{world in ('lobby', 'hub', 'spawn')}").evaluate(ctx));
+        assertFalse(ExpressionParser.parse("{world in ('lobby', 'arena')}").evaluate(ctx));
+        assertTrue(ExpressionParser.parse("{level in (1, 5.0, 10)}").evaluate(ctx));
+        assertFalse(ExpressionParser.parse("{level in (1, 2, 3)}").evaluate(ctx));
+        assertTrue(ExpressionParser.parse("{'spawn' in ('a', home)}").evaluate(ctx));
+        assertFalse(ExpressionParser.parse("{world in ()}").evaluate(ctx));
+
+        // Longs above 2^53 share a double, but are distinct members
+        Context big = new MapContext().with("x", (1L << 53) + 1).with("y", 1L << 53);
+        assertFalse(new InExpression(new FieldExpression("x"), List.of(new LiteralExpression(1L << 53))).evaluate(big));
+        assertTrue(new InExpression(new FieldExpression("x"), List.of(new LiteralExpression((1L << 53) + 1))).evaluate(big));
+        assertFalse(ExpressionParser.parse("{x in (y, 1.5)}").evaluate(big));
+        assertTrue(ExpressionParser.parse("{y in (x, 9007199254740992.0)}").evaluate(big));
+        assertTrue(ExpressionParser.parse("{level in (-0.0, 5)}").evaluate(ctx));
+    }
+
+    @Test
+    public void testInExpressionLargeNumericSet() {
+        StringBuilder list = new StringBuilder("(");
+        for (int i = 0; i < 1000; i += 3) {
+            list.append(i == 0 ? "" : ", ").append(i);
+        }
+        Expression expr = ExpressionParser.parse("{id in " + list + ")}");
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i % 3 == 0, expr.evaluate(new MapContext().with("id", i)), "id " + i);
+        }
+    }
+
+    @Test
+    public void testMatchesExpression() {
+        Context ctx = new MapContext().with("name", "Steve_42").with("inventory", "full");
+
+        assertTrue(ExpressionParser.parse("{name matches '[A-Z][a-z]+_\\d+'}").evaluate(ctx));
+        assertFalse(ExpressionParser.parse("{name matches 'Steve'}").evaluate(ctx));
+        // Word operators are not picked out of identifiers
+        assertTrue(ExpressionParser.parse("{inventory == 'full'}").evaluate(ctx));
+        assertThrows(IllegalArgumentException.class, () -> ExpressionParser.parse("{name matches other}"));
+        assertThrows(IllegalArgumentException.class, () -> ExpressionParser.parse("{name matches '[oops'}"));
+    }
+
+    @Test
+    public void testInAndMatchesRoundTrip() {
+        Context ctx = new MapContext().with("world", "hub").with("name", "Alex");
+        for (String source : new String[] {"{world in ('hub', 2)}", "{name matches 'A.*'}"}) {
+            Expression decoded = ExpressionCodec.decode(ExpressionCodec.encode(ExpressionParser.parse(source)));
+            assertTrue(decoded.evaluate(ctx), source);
+        }
+    }
+
+    // --- Guarded evaluation Tests ---
+
+    @Test
+    public void testGuardedExpressionRejectsCostlyExpressions() {
+        EvaluationLimits limits = new EvaluationLimits(20, 1000, Duration.ofMillis(50));
+
+        assertTrue(GuardedExpression.parse("{elo >= 1500}", limits).getCost() <= 20);
+        Exception exception = assertThrows(IllegalArgumentException.class,
+                () -> GuardedExpression.parse("{a ^ b ^ c ^ d ^ e ^ f > 1}", limits));
+        assertTrue(exception.getMessage().contains("exceeds the limit"));
+        assertThrows(IllegalArgumentException.class,
+                () -> GuardedExpression.parse("{player.world.spawn.chunk.owner.name == 'x'}", limits));
+    }
+
+    @Test
+    public void testGuardedExpressionStepBudget() {
+        EvaluationLimits limits = new EvaluationLimits(100, 50, Duration.ofSeconds(1));
+        Expression sum = GuardedExpression.parse("{values.sum > 0}", limits);
+
+        assertTrue(sum.evaluate(new MapContext().with("values", List.of(1, 2, 3))));
+        List<Integer> many = Collections.nCopies(1000, 1);
+        EvaluationBudgetExceededException exception = assertThrows(EvaluationBudgetExceededException.class,
+                () -> sum.evaluate(new MapContext().with("values", many)));
+        assertTrue(exception.getSteps() > 50);
+
+        // Every evaluation gets a fresh budget
+        assertTrue(sum.evaluate(new MapContext().with("values", List.of(1))));
+    }
+
+    @Test
+    public void testGuardedContextTimeBudget() {
+        EvaluationLimits limits = new EvaluationLimits(100, Long.MAX_VALUE, Duration.ofNanos(1));
+        Context slow = new MapContext().with("slow", new Object() {
+            @Exposed(name = "value")
+            public int value() {
+                long end = System.nanoTime() + 1_000_000;
+                while (System.nanoTime() < end) {
+                    Thread.onSpinWait();
+                }
+                return 1;
+            }
+        });
+
+        GuardedContext guarded = new GuardedContext(slow, limits);
+        ValueExpression expr = ExpressionParser.parseValueExpression("slow.value + 1");
+        assertThrows(EvaluationBudgetExceededException.class, () -> {
+            for (int i = 0; i < 100; i++) {
+                expr.evaluate(guarded);
+            }
+        });
+    }
+
+    @Test
+    public void testGuardedExpressionTimesShortEvaluations() {
+        class Slow {
+            public final int v = 1;
+
+            @Exposed(name = "next")
+            public Slow next() {
+                long end = System.nanoTime() + 2_000_000;
+                while (System.nanoTime() < end) {
+                    Thread.onSpinWait();
+                }
+                return this;
+            }
+        }
+
+        // Far fewer steps than the clock interval, and a fresh context for every evaluation
+        GuardedExpression expr = GuardedExpression.parse("{s.next.next.next.v == 1}",
+                new EvaluationLimits(100, Long.MAX_VALUE, Duration.ofMillis(1)));
+        Context ctx = new MapContext().with("s", new Slow());
+        for (int i = 0; i < 3; i++) {
+            assertThrows(EvaluationBudgetExceededException.class, () -> expr.evaluate(ctx));
+        }
+    }
+
+    @Test
+    public void testGuardedExpressionAbortsCatastrophicPatterns() {
+        GuardedExpression expr = GuardedExpression.parse("{name matches '(.*a){20}'}",
+                new EvaluationLimits(100, 10_000, Duration.ofSeconds(10)));
+        assertTrue(expr.getCost() <= 100);
+        assertFalse(expr.evaluate(new MapContext().with("name", "b")));
+        assertThrows(EvaluationBudgetExceededException.class,
+                () -> expr.evaluate(new MapContext().with("name", "a".repeat(24) + "!")));
+    }
+
+    // --- Explain Tests ---
+
+    @Test
+    public void testExplainExpressionTree() {
+        Context ctx = new MapContext().with("kills", 10).with("deaths", 5).with("item", new Item("sword", 3));
+        ExplainNode root = ExpressionParser.parse("{kills / deaths > item.amount}").explain(ctx);
+
+        assertEquals(false, root.getResult());
+        assertEquals("(kills / deaths) > item.amount", root.getLabel());
+        assertEquals(2, root.getChildren().size());
+
+        ExplainNode math = root.getChildren().get(0);
+        assertEquals(2.0, ((Number) math.getResult()).doubleValue());
+        assertEquals(List.of("kills", "deaths"), math.getChildren().stream().map(ExplainNode::getLabel).toList());
+
+        ExplainNode field = root.getChildren().get(1);
+        assertEquals(3, field.getResult());
+        assertEquals(1, field.getLookupHits() + field.getLookupMisses());
+        assertEquals(1, root.getLookupHits() + root.getLookupMisses());
+        assertTrue(root.getNanos() >= math.getNanos());
+    }
+
+    @Test
+    public void testExplainRecordsErrors() {
+        ExplainNode root = ExpressionParser.parse("{name * 2 > 1}").explain(new MapContext().with("name", "Alex"));
+
+        assertNull(root.getResult());
+        assertNotNull(root.getError());
+        assertSame(root.getError(), root.getChildren().get(0).getError());
+    }
+
+    @Test
+    public void testExplainTemplateAndAggregate() {
+        Template template = new Template("Hi ${name}, ${score:%.1f}");
+        Context ctx = new MapContext().with("name", "Alex").with("score", 2.25);
+
+        ExplainNode root = template.explain(ctx);
+        assertEquals("Hi Alex, 2.3", root.getResult());
+        assertEquals(List.of("Alex", "2.3"), root.getChildren().stream().map(ExplainNode::getResult).toList());
+
+        ProfileAggregator profiles = new ProfileAggregator();
+        for (int i = 0; i < 3; i++) {
+            profiles.record("greeting", template.explain(ctx));
+        }
+        profiles.record("check", ExpressionParser.parse("{name == 'Alex'}").explain(ctx));
+
+        assertEquals(3, profiles.getRule("greeting").getCount());
+        assertEquals(3, profiles.getNodes("greeting").get("${name}").getCount());
+        assertEquals(2, profiles.worst(5).size());
+        assertEquals(1, profiles.worst(1).size());
+    }
+
+    // --- Template Bundle Tests ---
+
+    @Test
+    public void testTemplateBundleCompilesLazily() {
+        TemplateBundle bundle = TemplateBundle.of("de", Map.of(
+                "greeting", "Hallo ${name}!",
+                "farewell", "Tsch\u00fcss ${name}",
+                "snow", "\u2744 ${name}"), 2);
+        Context ctx = new MapContext().with("name", "Alex");
+
+        assertEquals(3, bundle.size());
+        assertEquals(0, bundle.memoryUsage().getCompiledTemplates());
+        assertEquals("Tsch\u00fcss ${name}", bundle.getSource("farewell"));
+        assertEquals("\u2744 Alex", bundle.render("snow", ctx));
+        assertSame(bundle.get("snow"), bundle.get("snow"));
+        assertEquals("Hallo Alex!", bundle.render("greeting", ctx));
+        assertEquals("Tsch\u00fcss Alex", bundle.render("farewell", ctx));
+
+        assertEquals(2, bundle.memoryUsage().getCompiledTemplates());
+        assertNull(bundle.get("missing"));
+        assertThrows(IllegalArgumentException.class, () -> bundle.render("missing", ctx));
+    }
+
+    @Test
+    public void testTemplateBundleLoadAll() throws Exception {
+        Path dir = Files.createTempDirectory("bundles");
+        try {
+            Files.writeString(dir.resolve("en.properties"), "greeting=Hello ${name}\nfarewell=Bye\n");
+            Files.writeString(dir.resolve("fr.properties"), "greeting=Salut ${name}\n");
+            Files.writeString(dir.resolve("notes.txt"), "ignored");
+
+            Map<String, TemplateBundle> bundles = TemplateBundle.loadAll(dir, 16);
+            assertEquals(Set.of("en", "fr"), bundles.keySet());
+            assertEquals("Salut Alex", bundles.get("fr").render("greeting", new MapContext().with("name", "Alex")));
+
+            TemplateBundle.MemoryUsage usage = bundles.get("en").memoryUsage();
+            assertEquals(2, usage.getTemplates());
+            assertEquals(16 + "Hello ${name}Bye".length(), usage.getTextBytes());
+        } finally {
+            try (var files = Files.list(dir)) {
+                for (Path file : files.toList()) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dir);
+        }
+    }
+
+    // --- Template Section Tests ---
+
+    @Test
+    public void testConditionalSections() {
+        Template template = new Template("${#if vip}[VIP] ${#else}${#if score > 10}[PRO] ${/if}${/if}${name}");
+
+        assertEquals("[VIP] Alex", template.process(new MapContext().with("vip", true).with("name", "Alex")));
+        assertEquals("[PRO] Sam", template.process(new MapContext().with("vip", false).with("score", 20).with("name", "Sam")));
+        assertEquals("Kim", template.process(new MapContext().with("vip", false).with("score", 5).with("name", "Kim")));
+
+        // The untaken branch is never evaluated, so its missing placeholder does not fail
+        Template guarded = new Template("${#if online}${player.name}${#else}offline${/if}");
+        assertEquals("offline", guarded.process(new MapContext().with("online", false)));
+    }
+
+    @Test
+    public void testEachSections() {
+        Template template = new Template("${#each party as m}${m.type}x${m.amount}${#if m.amount > 1}!${/if} ${/each}");
+        Context ctx = new MapContext().with("party", List.of(new Item("sword", 1), new Item("bow", 2)));
+        assertEquals("swordx1 bowx2! ", template.process(ctx));
+
+        assertEquals("1,2,3,", new Template("${#each xs as x}${x},${/each}").process(new MapContext().with("xs", new int[] {1, 2, 3})));
+        assertEquals("", new Template("${#each xs as x}${x}${/each}").process(new MapContext()));
+        assertEquals("a:1 a:2 ", new Template("${#each xs as x}${name}:${x} ${/each}")
+                .process(new MapContext().with("name", "a").with("xs", List.of(1, 2))));
+
+        EvaluationLimits limits = new EvaluationLimits(100, 50, Duration.ofSeconds(1));
+        Context many = new GuardedContext(new MapContext().with("xs", Collections.nCopies(100, 1)), limits);
+        assertThrows(EvaluationBudgetExceededException.class,
+                () -> new Template("${#each xs as x}${x}${/each}").process(many));
+    }
+
+    @Test
+    public void testMalformedSections() {
+        assertThrows(IllegalArgumentException.class, () -> CompiledTemplate.compile("${#if a}x"));
+        assertThrows(IllegalArgumentException.class, () -> CompiledTemplate.compile("${#if a}x${/each}"));
+        assertThrows(IllegalArgumentException.class, () -> CompiledTemplate.compile("x${#else}"));
+        assertThrows(IllegalArgumentException.class, () -> CompiledTemplate.compile("${#each xs}x${/each}"));
+        assertThrows(IllegalArgumentException.class, () -> CompiledTemplate.compile("${#if}x${/if}"));
+        assertThrows(IllegalArgumentException.class, () -> CompiledTemplate.compile("${ #each }x"));
+    }
+
+    @Test
+    public void testSectionsRoundTripAndExplain() throws Exception {
+        CompiledTemplate template = CompiledTemplate.compile("${#each xs as x}${#if x > 1}${x}${#else}-${/if}${/each}");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            ExpressionCodec.writeTemplate(template, out);
+        }
+        CompiledTemplate decoded = ExpressionCodec.readTemplate(ByteBuffer.wrap(bytes.toByteArray()));
+
+        Context ctx = new MapContext().with("xs", List.of(1, 2, 3));
+        assertEquals("-23", decoded.render(ctx));
+
+        ExplainNode root = new Template(template).explain(ctx);
+        assertEquals("-23", root.getResult());
+        ExplainNode loop = root.getChildren().get(0);
+        assertEquals("${#each xs as x}", loop.getLabel());
+        // The list lookup plus one conditional per element
+        assertEquals(4, loop.getChildren().size());
+    }
+
+    // --- Row Table Tests ---
+
+    private static RowTable entityTable() {
+        RowSchema schema = new RowSchema()
+                .with("id", RowSchema.Type.INT)
+                .with("health", RowSchema.Type.FLOAT)
+                .with("kills", RowSchema.Type.LONG)
+                .with("hostile", RowSchema.Type.BOOLEAN)
+                .withRowSize(24);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(schema.getRowSize() * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < 4; i++) {
+            int base = i * schema.getRowSize();
+            buffer.putInt(base, i);
+            buffer.putFloat(base + 4, 5f * i);
+            buffer.putLong(base + 8, i * i);
+            buffer.put(base + 16, (byte) (i % 2));
+        }
+        return new RowTable(buffer, schema);
+    }
+
+    @Test
+    public void testRowCursorContext() {
+        RowTable table = entityTable();
+        assertEquals(4, table.rowCount());
+
+        Expression hostile = ExpressionParser.parse("{hostile == true}");
+        RowCursor cursor = table.cursor();
+        StringBuilder ids = new StringBuilder();
+        while (cursor.next()) {
+            if (hostile.evaluate(cursor)) {
+                ids.append(cursor.getLong("id"));
+            }
+        }
+        assertEquals("13", ids.toString());
+
+        cursor.moveTo(2);
+        assertEquals(10.0, cursor.getDouble("health"));
+        assertEquals(4L, cursor.get("kills"));
+        assertNull(cursor.get("missing"));
+        assertEquals(99, cursor.with("extra", 99).get("extra"));
+        assertThrows(IndexOutOfBoundsException.class, () -> cursor.moveTo(4));
+    }
+
+    @Test
+    public void testRowTableColumnarSelect() {
+        RowTable table = entityTable();
+        ColumnarPredicate predicate = ColumnarPredicate.compile(ExpressionParser.parse("{kills + health > 10}"));
+
+        assertTrue(predicate.isVectorized());
+        BitSet expected = new BitSet();
+        expected.set(2);
+        expected.set(3);
+        assertEquals(expected, predicate.select(table));
+
+        // Boolean fields are only visible to the row-by-row fallback
+        assertEquals(2, ColumnarPredicate.compile(ExpressionParser.parse("{hostile == true}")).select(table).cardinality());
+    }
+
+    // --- Streaming Template Tests ---
+
+    @Test
+    public void testStreamingAcrossBufferBoundaries() throws Exception {
+        String template = "Cost: $5 ${name} has ${score:%.1f}$${#if vip} [VIP]${#else} [-]${/if}"
+                + "${#each items as i} ${i.type}${#if i.amount > 1}x${i.amount}${/if}${/each}$";
+        Context ctx = new MapContext().with("name", "Alex").with("score", 2.25).with("vip", false)
+                .with("items", List.of(new Item("sword", 1), new Item("bow", 2)));
+        String expected = "Cost: $5 Alex has 2.3$ [-] sword bowx2$";
+
+        // Tiny buffers split every placeholder and section tag
+        for (int size : new int[] {1, 2, 3, 7, 8192}) {
+            StringBuilder out = new StringBuilder();
+            new StreamingTemplateProcessor(size).process(new StringReader(template), ctx, out);
+            assertEquals(expected, out.toString(), "buffer size " + size);
+        }
+        assertEquals(expected, new Template(template).process(ctx));
+    }
+
+    @Test
+    public void testStreamingSkipsUntakenBranches() {
+        StreamingTemplateProcessor processor = new StreamingTemplateProcessor(4);
+        Context ctx = new MapContext().with("online", false);
+
+        assertEquals("offline", processor.process("${#if online}${player.name}${#each player.friends as f}${f}${/each}"
+                + "${#else}offline${/if}", ctx));
+        assertThrows(IllegalArgumentException.class, () -> processor.process("${#if online}x", ctx));
+        assertThrows(IllegalArgumentException.class, () -> processor.process("${#if}x${/if}", ctx));
+        assertThrows(IllegalArgumentException.class, () -> processor.process("x${/if}", ctx));
+    }
+
+    @Test
+    public void testStreamingChecksSectionsItDoesNotRender() {
+        StreamingTemplateProcessor processor = new StreamingTemplateProcessor(4);
+        Context ctx = new MapContext().with("a", 1).with("l", List.of(1, 2)).with("none", List.of());
+
+        String crossed = "${#if a == 1}a${#else}${#each l as e}${e}${/if}${/each}${e}${/if}b";
+        assertThrows(IllegalArgumentException.class, () -> CompiledTemplate.compile(crossed));
+        assertThrows(IllegalArgumentException.class, () -> processor.process(crossed, ctx));
+        assertThrows(IllegalArgumentException.class,
+                () -> processor.process("${#each none as e}${#if e}x${/each}${/if}", ctx));
+        assertThrows(IllegalArgumentException.class,
+                () -> processor.process("${#each none as e}${#else}${#if e}${#else}${#else}${/if}${/each}", ctx));
+        assertEquals("-2", processor.process("${#each l as e}${#if e > 1}${e}${#else}-${/if}${/each}", ctx));
+    }
+
+    @Test
+    public void testStreamingWritesOverlongPlaceholdersAsText() {
+        Context ctx = new MapContext().with("name", "Alex");
+        String name = "a".repeat(5000);
+
+        assertEquals("x${" + name + "} Alex", new StreamingTemplateProcessor(7)
+                .process("x${" + name + "} ${name}", ctx));
+        String prefix = "${" + "a".repeat(4096);
+        assertEquals(prefix + "Alex", new StreamingTemplateProcessor().process(prefix + "${name}", ctx));
+    }
+
+    @Test
+    public void testStreamingMatchesTemplateOnUnclosedPlaceholders() {
+        Context ctx = new MapContext().with("name", "Alex").with("vip", true).with("xs", List.of(1, 2));
+        String[] templates = {
+                "Hi ${name",
+                "Hi ${name\n}",
+                "${a\r\n${name}}",
+                "$${na$me\u2028${name} $",
+                "${#if vip}${name\n}!${/if}",
+                "${#each xs as x}${x} ${x\n${/each}",
+                "${name}${"
+        };
+        for (String template : templates) {
+            String expected = new Template(template).process(ctx);
+            for (int size : new int[] {1, 3, 8192}) {
+                assertEquals(expected, new StreamingTemplateProcessor(size).process(template, ctx), template);
+            }
+        }
+    }
+
+    @Test
+    public void testStreamingFromFileAndChannel() throws Exception {
+        Path file = Files.createTempFile("canvas-stream", ".txt");
+        try {
+            StringBuilder template = new StringBuilder();
+            for (int i = 0; i < 2000; i++) {
+                template.append("Gr\u00fc\u00dfe ${name} \u2744 ");
+            }
+            Files.writeString(file, template, StandardCharsets.UTF_8);
+            Context ctx = new MapContext().with("name", "Alex");
+            String expected = template.toString().replace("${name}", "Alex");
+
+            StringWriter out = new StringWriter();
+            new StreamingTemplateProcessor(5).process(file, StandardCharsets.UTF_8, ctx, out);
+            assertEquals(expected, out.toString());
+
+            StringBuilder channelOut = new StringBuilder();
+            try (FileChannel channel = FileChannel.open(file)) {
+                new StreamingTemplateProcessor().process(channel, StandardCharsets.UTF_8, ctx, channelOut);
+            }
+            assertEquals(expected, channelOut.toString());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    // --- Render Scheduler Tests ---
+
+    @Test
+    public void testRenderSchedulerPriorityAndBudget() {
+        long[] now = {0};
+        RenderScheduler scheduler = new RenderScheduler(e -> { }, () -> now[0]);
+        Template template = new Template("${name}");
+        List<String> output = new ArrayList<>();
+
+        for (String name : new String[] {"low", "high", "mid"}) {
+            Context ctx = new MapContext().with("name", name);
+            int priority = name.equals("high") ? 10 : name.equals("mid") ? 5 : 0;
+            scheduler.submit(template, ctx, priority, Duration.ofNanos(100), output::add);
+        }
+        assertEquals(3, scheduler.getQueueDepth());
+
+        // A zero budget still renders one template per tick
+        assertEquals(1, scheduler.runTick(0));
+        assertEquals(List.of("high"), output);
+
+        now[0] = 200;
+        assertEquals(2, scheduler.runTick(1_000_000));
+        assertEquals(List.of("high", "mid", "low"), output);
+        assertEquals(0, scheduler.getQueueDepth());
+        assertEquals(3, scheduler.getRendered());
+        assertEquals(2, scheduler.getDeadlineMisses());
+        assertEquals(0, scheduler.runTick(1_000_000));
+    }
+
+    @Test
+    public void testRenderSchedulerRunsOverdueWorkUnderLoad() {
+        long[] now = {0};
+        RenderScheduler scheduler = new RenderScheduler(e -> { }, () -> now[0]);
+        Template template = new Template("${name}");
+        List<String> output = new ArrayList<>();
+        // Every render takes 10ns
+        Consumer<String> render = name -> {
+            output.add(name);
+            now[0] += 10;
+        };
+
+        scheduler.submit(template, new MapContext().with("name", "low"), Integer.MIN_VALUE, Duration.ofNanos(50), render);
+        for (int i = 0; i < 20; i++) {
+            scheduler.submit(template, new MapContext().with("name", "high" + i), Integer.MAX_VALUE,
+                    Duration.ofSeconds(1), render);
+            scheduler.runTick(0);
+        }
+
+        // The low-priority render runs on the first tick after its deadline, not after the load
+        assertEquals(20, output.size());
+        assertEquals(6, output.indexOf("low"));
+        assertEquals(1, scheduler.getDeadlineMisses());
+        assertEquals(1, scheduler.getQueueDepth());
+    }
+
+    @Test
+    public void testRenderSchedulerBoundsOverduePreemption() {
+        long[] now = {0};
+        RenderScheduler scheduler = new RenderScheduler(e -> { }, () -> now[0]);
+        Template template = new Template("${name}");
+        List<String> output = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            scheduler.submit(template, new MapContext().with("name", "low"), Integer.MIN_VALUE, Duration.ZERO, output::add);
+            scheduler.submit(template, new MapContext().with("name", "high"), Integer.MAX_VALUE, Duration.ofSeconds(1),
+                    output::add);
+        }
+        now[0] = 1;
+        for (int i = 0; i < 20; i++) {
+            scheduler.runTick(0);
+        }
+
+        // A burst of overdue work takes one render in four until the high-priority work is done
+        assertEquals(List.of("low", "high", "high", "high", "low", "high", "high", "high", "low", "high", "high", "high",
+                "low", "high", "low", "low", "low", "low", "low", "low"), output);
+    }
+
+    @Test
+    public void testRenderSchedulerCoalescing() {
+        RenderScheduler scheduler = new RenderScheduler();
+        Template template = new Template("${count}");
+        MutableContext ctx = new MutableContext();
+        List<String> first = new ArrayList<>();
+        List<String> latest = new ArrayList<>();
+
+        ctx.set("count", 1);
+        assertFalse(scheduler.submit(template, ctx, 0, Duration.ofSeconds(1), first::add));
+        ctx.set("count", 2);
+        assertTrue(scheduler.submit(template, ctx, 0, Duration.ofSeconds(1), latest::add));
+        scheduler.submit(new Template("${missing}"), ctx, 0, Duration.ofSeconds(1), latest::add);
+
+        assertEquals(2, scheduler.getQueueDepth());
+        scheduler.runTick(Long.MAX_VALUE);
+        assertEquals(List.of(), first);
+        assertEquals(List.of("2"), latest);
+        assertEquals(1, scheduler.getCoalesced());
+        assertEquals(1, scheduler.getFailed());
+    }
+
+    // --- Placeholder Provider Tests ---
+
+    @Test
+    public void testPlaceholderProviderPerRender() {
+        PlaceholderRegistry registry = new PlaceholderRegistry();
+        int[] calls = {0};
+        registry.register("top", (key, ctx) -> {
+            calls[0]++;
+            return key.equals("kills[1]") ? "Alex" : null;
+        });
+
+        Template template = new Template("${top.kills[1]} ${top.kills[1]} ${name}");
+        Context ctx = registry.context(new MapContext().with("name", "Sam"));
+        assertEquals("Alex Alex Sam", template.process(ctx));
+        assertEquals(1, calls[0]);
+
+        // Each render gets a fresh per render cache
+        template.process(registry.context(new MapContext().with("name", "Sam")));
+        assertEquals(2, calls[0]);
+
+        assertEquals("Alex", registry.context(new MapContext()).get("top.kills[1]"));
+        assertNull(registry.context(new MapContext()).get("top.deaths"));
+        assertThrows(IllegalArgumentException.class, () -> registry.register("a.b", (key, ctx2) -> 1));
+    }
+
+    @Test
+    public void testPlaceholderNamespaceShadowsContext() {
+        PlaceholderRegistry registry = new PlaceholderRegistry();
+        registry.register("server", (key, ctx) -> key);
+        Context ctx = registry.context(new MapContext().with("server", "base"));
+
+        assertEquals("tps", new Template("${server.tps}").process(ctx));
+        assertThrows(IllegalArgumentException.class, () -> new Template("${server}").process(ctx));
+        assertThrows(IllegalArgumentException.class, () -> ExpressionParser.parse("{server == null}").evaluate(ctx));
+        assertThrows(IllegalArgumentException.class, () -> Template.resolvePath("server", ctx));
+        assertThrows(IllegalArgumentException.class, () -> ctx.get("server"));
+        assertEquals("tps", Template.resolvePath("server.tps", ctx));
+
+        // Namespaces are found through guarded contexts, and loop variables shadow them
+        Context guarded = new GuardedContext(ctx, new EvaluationLimits(100, 100, Duration.ofSeconds(1)));
+        assertTrue(ExpressionParser.parse("{server.tps == 'tps'}").evaluate(guarded));
+        Context loop = registry.context(new MapContext().with("xs", List.of(Map.of("name", "a"), Map.of("name", "b"))));
+        assertEquals("a b ", new Template("${#each xs as server}${server.name} ${/each}").process(loop));
+    }
+
+    @Test
+    public void testPlaceholderProviderDropsUnreadRefreshKeys() {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        Map<String, Integer> calls = new ConcurrentHashMap<>();
+        try (PlaceholderRegistry registry = new PlaceholderRegistry(executor)) {
+            registry.register("stats", new PlaceholderProvider() {
+                @Override
+                public Object resolve(String key, Context context) {
+                    return calls.merge(key, 1, Integer::sum);
+                }
+
+                @Override
+                public CachePolicy cachePolicy() {
+                    return CachePolicy.refreshEvery(Duration.ofHours(1));
+                }
+            });
+
+            Expression player = ExpressionParser.parse("{stats.player > 0}");
+            assertTrue(player.evaluate(registry.context(new MapContext())));
+            assertTrue(ExpressionParser.parse("{stats.once > 0}").evaluate(registry.context(new MapContext())));
+
+            registry.refreshNow();
+            assertEquals(Map.of("player", 2, "once", 2), calls);
+
+            // Only keys read since the last refresh are refreshed again
+            assertTrue(player.evaluate(registry.context(new MapContext())));
+            registry.refreshNow();
+            registry.refreshNow();
+            assertEquals(Map.of("player", 3, "once", 2), calls);
+
+            // A dropped key is computed again on its next request
+            assertEquals(3, registry.context(new MapContext()).get("stats.once"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPlaceholderProviderTtl() {
+        long[] now = {0};
+        PlaceholderRegistry registry = new PlaceholderRegistry(null, () -> now[0]);
+        int[] calls = {0};
+        registry.register("server", new PlaceholderProvider() {
+            @Override
+            public Object resolve(String key, Context context) {
+                return 20.0 - calls[0]++;
+            }
+
+            @Override
+            public CachePolicy cachePolicy() {
+                return CachePolicy.ttl(Duration.ofNanos(100));
+            }
+        });
+
+        Expression healthy = ExpressionParser.parse("{server.tps > 19.5}");
+        assertTrue(healthy.evaluate(registry.context(new MapContext())));
+        now[0] = 50;
+        assertTrue(healthy.evaluate(registry.context(new MapContext())));
+        assertEquals(1, calls[0]);
+
+        now[0] = 150;
+        assertFalse(healthy.evaluate(registry.context(new MapContext())));
+        assertEquals(2, calls[0]);
+    }
+
+    @Test
+    public void testPlaceholderProviderBackgroundRefresh() throws Exception {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        AtomicInteger calls = new AtomicInteger();
+        try (PlaceholderRegistry registry = new PlaceholderRegistry(executor)) {
+            registry.register("server", new PlaceholderProvider() {
+                @Override
+                public Object resolve(String key, Context context) {
+                    return calls.incrementAndGet();
+                }
+
+                @Override
+                public CachePolicy cachePolicy() {
+                    return CachePolicy.refreshEvery(Duration.ofMillis(5));
+                }
+            });
+
+            assertEquals(1, registry.context(new MapContext()).get("server.online"));
+            // Wait for a refreshed value to be stored, not just computed
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while ((Integer) registry.context(new MapContext()).get("server.online") < 2) {
+                assertTrue(System.nanoTime() - deadline < 0, "value was not refreshed");
+                Thread.sleep(1);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        PlaceholderRegistry withoutScheduler = new PlaceholderRegistry();
+        assertThrows(IllegalArgumentException.class, () -> withoutScheduler.register("server", new PlaceholderProvider() {
+            @Override
+            public Object resolve(String key, Context context) {
+                return null;
+            }
+
+            @Override
+            public CachePolicy cachePolicy() {
+                return CachePolicy.refreshEvery(Duration.ofSeconds(1));
+            }
+        }));
+    }
+}